@@ -5,9 +5,17 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.Random;
+import jdk.jfr.FlightRecorder;
 
 public class Chip {
 
+    /**
+     * How opcodes are decoded
+     * SWITCH: the nested switch in interpret(), prints a trace
+     * TABLE: one precomputed handler per opcode value, see DispatchTable
+     */
+    public enum Core { SWITCH, TABLE }
+
     /**
      * 4kB of 8-bit memory
      * position 0x50: "bios" fontset
@@ -47,9 +55,41 @@ public class Chip {
      * The 64x32 pixel monochrome (black/white) display
      */
     private byte[] display; // 0 for black, 1 for white
+    private FrameBuffer frameBuffer; // completed frames handed to the renderer
 
     private boolean needRedraw;
 
+    /**
+     * only set while the debugger has something armed
+     * otherwise run() takes its plain path
+     */
+    private volatile Debugger debugger;
+
+    /**
+     * only set when input latency is being measured
+     */
+    private InputLatency latency;
+
+    /**
+     * consecutive DXYN form one draw burst for the flight recorder
+     * the event only exists while a recording wants it
+     */
+    private boolean inDrawBurst;
+    private int drawBurstSprites;
+    private int drawBurstPixels;
+    private DrawBurstEvent drawBurst;
+
+    private Core core = Core.SWITCH;
+
+    private boolean muted; // no beeps, eg when running headless
+    private boolean trace = true; // print every executed instruction
+
+    /**
+     * state of the xorshift generator behind CXNN
+     * part of the chip state so runs can be replayed exactly
+     */
+    private int randomSeed;
+
     private static final int WIDTH_OF_SCREEN = 64;
 
     /**
@@ -70,23 +110,56 @@ public class Chip {
         keys = new byte[16];
 
         display = new byte[64 * 32]; // dimension
+        frameBuffer = new FrameBuffer(display.length);
         // test
 //        display[0] = 1;
 //        display[99] = 1;
         loadFontset();
 
         needRedraw = false;
+        randomSeed = new Random().nextInt() | 1; // xorshift never leaves 0
     }
 
     /**
      * Executes a single Operation Code (Opcode)
+     * @return
+     * false if the debugger has the chip halted and nothing was executed
      */
-    public void run() {
+    public boolean run() {
         // fetch opcode
         // memory is 8-bits, opcode is 6-bit
         // merge 2 memory slots by shifting 1 to new value by 8 positions left (1 byte)
         char opcode = (char) ((memory[pc] << 8) | memory[pc + 1]); // OR
-        System.out.print(Integer.toHexString(opcode) + ": ");
+        Debugger debugger = this.debugger;
+        if(debugger != null && !debugger.beforeExecute(opcode)) {
+            return false; // halted, opcode is not executed and timers stay as they are
+        }
+        if(core == Core.TABLE) {
+            DispatchTable.HANDLERS[opcode].execute(this, opcode);
+        } else {
+            interpret(opcode);
+        }
+        if(inDrawBurst && (opcode & 0xF000) != 0xD000) endDrawBurst();
+
+        // at end of each round, check delay
+        if(sound_timer > 0) {
+            sound_timer--;
+            if(sound_timer == 0) emitSound();
+            if(!muted) Audio.playSound("./assets_sound_effect.wav");
+        }
+        if(delay_timer > 0) {
+            delay_timer--;
+        }
+        // execute opcode
+        return true;
+    }
+
+    /**
+     * Decodes and executes an opcode with the nested switch, printing a trace
+     * the reference every other core is checked against
+     */
+    private void interpret(char opcode) {
+        if(trace) System.out.print(Integer.toHexString(opcode) + ": ");
         // decode opcode
         switch(opcode & 0xF000) { // get all values of first nibble
             // eg
@@ -108,12 +181,11 @@ public class Chip {
                     case 0x00EE: // 00EE: Returns from subroutine
                         stackPointer--;
                         pc = (char) (stack[stackPointer] + 2); // jump to last subroutine
-                        System.out.println("Returning to " + Integer.toHexString(pc).toUpperCase());
+                        if(trace) System.out.println("Returning to " + Integer.toHexString(pc).toUpperCase());
                         break;
 
                     default: // 0NNN: Calls RCA 1802 Program at address NNN
-                        System.err.println("Unsupported Opcode!");
-                        System.exit(0);
+                        opFault(opcode);
                         break;
                 }
                 break;
@@ -122,7 +194,7 @@ public class Chip {
                 int nnn = opcode & 0x0FFF;
                 // no need to add to stack
                 pc = (char) nnn;
-                System.out.println("Jumping to " + Integer.toHexString(pc).toUpperCase());
+                if(trace) System.out.println("Jumping to " + Integer.toHexString(pc).toUpperCase());
                 break;
             }
 
@@ -131,7 +203,7 @@ public class Chip {
                 stack[stackPointer] = pc;// current address
                 stackPointer++; // avoid overwriting
                 pc = (char) (opcode & 0x0FFF); // jump to address given by subroutine
-                System.out.println("Calling " + Integer.toHexString(pc).toUpperCase() + " from " + Integer.toHexString(stack[stackPointer - 1]).toUpperCase());
+                if(trace) System.out.println("Calling " + Integer.toHexString(pc).toUpperCase() + " from " + Integer.toHexString(stack[stackPointer - 1]).toUpperCase());
                 break;
 
             case 0x3000: { //3XNN: Skips the next instruction if VX equals NN
@@ -139,10 +211,10 @@ public class Chip {
                 int nn = (opcode & 0x00FF);
                 if(V[x] == nn) {
                     pc += 4;
-                    System.out.println("Skipping next instruction (V[" + x + "] == "+ nn + ")");
+                    if(trace) System.out.println("Skipping next instruction (V[" + x + "] == "+ nn + ")");
                 } else {
                     pc += 2;
-                    System.out.println("Not skipping next instruction (V[" + x + "] != "+ nn + ")");
+                    if(trace) System.out.println("Not skipping next instruction (V[" + x + "] != "+ nn + ")");
                 }
                 break;
             }
@@ -151,10 +223,10 @@ public class Chip {
                 int x = (opcode & 0x0F00) >> 8;
                 int nn = opcode & 0x00FF;
                 if(V[x] != nn) {
-                    System.out.println("Skipping next instruction V[" + x + "] = " + (int)V[x] + " != " + nn);
+                    if(trace) System.out.println("Skipping next instruction V[" + x + "] = " + (int)V[x] + " != " + nn);
                     pc += 4;
                 } else {
-                    System.out.println("Not skipping next instruction V[" + x + "] = " + (int)V[x] + " == " + nn);
+                    if(trace) System.out.println("Not skipping next instruction V[" + x + "] = " + (int)V[x] + " == " + nn);
                     pc += 2;
                 }
                 break;
@@ -164,10 +236,10 @@ public class Chip {
                 int x = (opcode & 0x0F00) >> 8;
                 int y = (opcode & 0x00F0) >> 4;
                 if(V[x] == V[y]) {
-                    System.out.println("Skipping next instruction V[" + x + "] == V[" + y + "]");
+                    if(trace) System.out.println("Skipping next instruction V[" + x + "] == V[" + y + "]");
                     pc += 4;
                 } else {
-                    System.out.println("Not skipping next instruction V[" + x + "] != V[" + y + "]");
+                    if(trace) System.out.println("Not skipping next instruction V[" + x + "] != V[" + y + "]");
                     pc += 2;
                 }
                 break;
@@ -177,7 +249,7 @@ public class Chip {
                 int x = (opcode & 0x0F00) >> 8; // index of register; this case at 3rd spot; shift right 8 positions
                 V[x] = (char) (opcode & 0x00FF); // last 2 nibbles of opcode
                 pc += 2; // move by 2 bytes since 2 bytes used to make 1 opcode
-                System.out.println("Setting V[" + x + "] to " + (int)V[x]);
+                if(trace) System.out.println("Setting V[" + x + "] to " + (int)V[x]);
                 break;
             }
 
@@ -186,7 +258,7 @@ public class Chip {
                 int nn = (opcode & 0x00FF);
                 V[x] = (char) ((V[x] + nn) & 0xFF); // may overflow or borrow
                 pc += 2;
-                System.out.println("Adding " + nn + " to V[" + x + "] = " + (int)V[x]);
+                if(trace) System.out.println("Adding " + nn + " to V[" + x + "] = " + (int)V[x]);
                 break;
             }
 
@@ -197,7 +269,7 @@ public class Chip {
                     case 0x0000: { // 8XY0: Sets VX to the value of VY
                         int x = (opcode & 0x0F00) >> 8;
                         int y = (opcode & 0x00F0) >> 4;
-                        System.out.println("Set V[" + x + "] to " + (int)V[y]);
+                        if(trace) System.out.println("Set V[" + x + "] to " + (int)V[y]);
                         V[x] = V[y];
                         pc += 2;
                         break;
@@ -206,7 +278,7 @@ public class Chip {
                     case 0x0001: { // 8XY1: Sets VX to VX or VY
                         int x = (opcode & 0x0F00) >> 8;
                         int y = (opcode & 0x00F0) >> 4;
-                        System.out.println("Set V[" + x + "] = V[" + x + "] | V[" + y + "]");
+                        if(trace) System.out.println("Set V[" + x + "] = V[" + x + "] | V[" + y + "]");
                         V[x] = (char) ((V[x] | V[y]) & 0xFF); // & with maximum binary value
                         pc += 2;
                         break;
@@ -216,7 +288,7 @@ public class Chip {
                         int x = (opcode & 0x0F00) >> 8;
                         int y = (opcode & 0x00F0) >> 4;
 //                        System.out.println("Set V[" + x + "] to V[" + x + "] = " + (int)V[x] + " & V[" + y + "] = " + (int)V[y] + " = " + (int)(V[x] & V[y]));
-                        System.out.println("Set V[" + x + "] to " + (int)V[x] + " & " + (int)V[y] + " = " + (int)(V[x] & V[y]));
+                        if(trace) System.out.println("Set V[" + x + "] to " + (int)V[x] + " & " + (int)V[y] + " = " + (int)(V[x] & V[y]));
                         V[x] = (char) (V[x] & V[y]);
                         pc += 2;
                         break;
@@ -225,7 +297,7 @@ public class Chip {
                     case 0x0003: { // 8XY3: Sets VX to VX xor VY
                         int x = (opcode & 0x0F00) >> 8;
                         int y = (opcode & 0x00F0) >> 4;
-                        System.out.println("Set V[" + x + "] = V[" + x + "] ^ V[" + y + "]");
+                        if(trace) System.out.println("Set V[" + x + "] = V[" + x + "] ^ V[" + y + "]");
                         V[x] = (char) ((V[x] ^ V[y]) & 0xFF); // & with maximum binary value
                         pc += 2;
                         break;
@@ -234,15 +306,15 @@ public class Chip {
                     case 0x0004: { // 8XY4: Adds VY to VX. VF is set to 1 when carry applies else to 0
                         int x = (opcode & 0x0F00) >> 8;
                         int y = (opcode & 0x00F0) >> 4;
-                        System.out.print("Adding V[" + x + "] (" + (int)V[x] + ") + V[" + y + "] (" + (int)V[y] + ") = " + ((V[x] + V[y]) & 0xFF) + ", Apply Carry if needed");
+                        if(trace) System.out.print("Adding V[" + x + "] (" + (int)V[x] + ") + V[" + y + "] (" + (int)V[y] + ") = " + ((V[x] + V[y]) & 0xFF) + ", Apply Carry if needed");
                         // Chip8 stores data in bytes (256 values)
                         // if value is larger than 256, it will subtract 255 since it can't store those
                         if(V[y] > 0xFF - V[x]) { // V[x] + V[y] > 255
                             V[0xF] = 1; // VF
-                            System.out.println("Carry!");
+                            if(trace) System.out.println("Carry!");
                         } else {
                             V[0xF] = 0;
-                            System.out.println("No Carry");
+                            if(trace) System.out.println("No Carry");
                         }
                         V[x] = (char) ((V[x] + V[y]) & 0xFF); // never overflow
                         pc += 2;
@@ -253,13 +325,13 @@ public class Chip {
                         // borrow: if VY > VX, VX - VY will be below 0, not possible due to unsigned bytes
                         int x = (opcode & 0x0F00) >> 8;
                         int y = (opcode & 0x00F0) >> 4;
-                        System.out.print("V[" + x + "] = " + (int)V[x] + "V[" + y + "] = " + (int)V[y] + ", ");
+                        if(trace) System.out.print("V[" + x + "] = " + (int)V[x] + "V[" + y + "] = " + (int)V[y] + ", ");
                         if(V[y] >= V[x]) {
                             V[0xF] = 0; // if set to 1, score when ball hits paddle instead of goal
-                            System.out.println("Borrow!");
+                            if(trace) System.out.println("Borrow!");
                         } else {
                             V[0xF] = 1;
-                            System.out.println("No Borrow");
+                            if(trace) System.out.println("No Borrow");
                         }
                         V[x] = (char) ((V[x] - V[y]) & 0xFF); // & 0xFF to never exceed byte size
                         pc += 2;
@@ -273,7 +345,7 @@ public class Chip {
                         V[0xF] = (char) (V[x] & 0x1); // & with 1
                         V[x] = (char) (V[x] >> 1); // shift right by 1
                         pc += 2;
-                        System.out.println("Shift V[" + x + "] >> 1 and VF to LSB of VX");
+                        if(trace) System.out.println("Shift V[" + x + "] >> 1 and VF to LSB of VX");
                         break;
                     }
 
@@ -286,7 +358,7 @@ public class Chip {
                             V[0xF] = 0;
                         }
                         V[x] = (char) ((V[y] - V[x]) & 0xFF);
-                        System.out.println("V[" + x + "] = V[" + y + "] - V[" + x + "], applies borrow if needed");
+                        if(trace) System.out.println("V[" + x + "] = V[" + y + "] - V[" + x + "], applies borrow if needed");
                         pc += 2;
                         break;
                     }
@@ -297,13 +369,12 @@ public class Chip {
                         V[0xF] = (char) (V[x] & 0x80);
                         V[x] = (char) (V[x] << 1); // shift right by 1
                         pc += 2;
-                        System.out.println("Shift V[" + x + "] << 1 and VF to MSB of VX");
+                        if(trace) System.out.println("Shift V[" + x + "] << 1 and VF to MSB of VX");
                         break;
                     }
 
                     default:
-                        System.err.println("Unsupported Opcode!");
-                        System.exit(0);
+                        opFault(opcode);
                         break;
                 }
 
@@ -313,10 +384,10 @@ public class Chip {
                 int x = (opcode & 0x0F00) >> 8;
                 int y = (opcode & 0x00F0) >> 4;
                 if(V[x] != V[y]) {
-                    System.out.println("Skipping next instruction V[" + x + "] != V[" + y + "]");
+                    if(trace) System.out.println("Skipping next instruction V[" + x + "] != V[" + y + "]");
                     pc += 4;
                 } else {
-                    System.out.println("Not skipping next instruction V[" + x + "] == V[" + y + "]");
+                    if(trace) System.out.println("Not skipping next instruction V[" + x + "] == V[" + y + "]");
                     pc += 2;
                 }
                 break;
@@ -325,7 +396,7 @@ public class Chip {
             case 0xA000: // ANNN: Set I to NNN
                 I = (char) (opcode & 0x0FFF); // address
                 pc += 2;
-                System.out.println("Set I to " + Integer.toHexString(I).toUpperCase());
+                if(trace) System.out.println("Set I to " + Integer.toHexString(I).toUpperCase());
                 break;
 
             case 0xB000: { // BNNN: Jumps to the address NNN plus V0
@@ -338,54 +409,18 @@ public class Chip {
             case 0xC000: { // CXNN: Set VX to a random number and NN
                 int x = (opcode & 0x0F00) >> 8;
                 int nn = (opcode & 0x00FF);
-                int randomNumber = new Random().nextInt(256) & nn;
-                System.out.println("V[" + x + "] has been set to (randomised) " + randomNumber);
+                int randomNumber = nextRandom() & nn;
+                if(trace) System.out.println("V[" + x + "] has been set to (randomised) " + randomNumber);
                 V[x] = (char) randomNumber;
                 pc += 2;
                 break; // else it will immediately draw without condition
             }
 
             case 0xD000: { // DXYN: Draw a sprite (X, Y) size (8, N). Sprite is located at I
-                // Default width is 8, goes into single byte of 8 pixels
-                // N is the height of image
-                // Drawing by XOR-ing to the screen
-                // Check collision and set V[0xF]
-                // Read image from I
                 int x = V[(opcode & 0x0F00) >> 8];
                 int y = V[(opcode & 0x00F0) >> 4];
-                int height = opcode & 0x000F; // no need shift as last nibble
-
-                V[0xF] = 0; // collision flag
-
-                for(int _y = 0; _y < height; _y++) {
-                    int line = memory[I + _y]; // add to address pointer to get to next line of image
-                    for(int _x = 0; _x < 8; _x++) {
-                        int pixel = line & (0x80 >> _x); // ensures byte is drawn from left to right
-                        if(pixel != 0) {
-                            int totalX = x + _x;
-                            int totalY = y + _y;
-
-                            // screen wrapping
-                            // allows paddles to move from top of screen to bottom of screen border
-                            // while totalX > 64-> totalX -= 64
-                            totalX = totalX % 64; // keep remainder
-                            totalY = totalY % 32; // keep remainder
-
-                            // display is 64x32
-                            // first pixel on 2nd line - display[64]
-                            // first pixel on 3rd line - display[128], so on...
-                            int index = (totalY * WIDTH_OF_SCREEN) + totalX;
-
-                            // there is collision
-                            if(display[index] == 1) V[0xF] = 1;
-
-                            display[index] ^= 1; // XOR
-                        }
-                    }
-                }
-                pc += 2;
-                needRedraw = true; // flickering effect
-                System.out.println("Drawing at V[" + ((opcode & 0x0F00) >> 8) + "] = " + x + ", V[" + ((opcode & 0x00F0) >> 4) + "] = " + y);
+                drawSprite(opcode);
+                if(trace) System.out.println("Drawing at V[" + ((opcode & 0x0F00) >> 8) + "] = " + x + ", V[" + ((opcode & 0x00F0) >> 4) + "] = " + y);
                 break;
             }
 
@@ -395,30 +430,31 @@ public class Chip {
                     case 0x009E: {// EX9E: Skip next instruction if key VX is pressed
                         int x = (opcode & 0x0F00) >> 8;
                         int key = V[x];
+                        if(latency != null) latency.keyRead(key);
                         if (keys[key] == 1) {
                             pc += 4;
                         } else {
                             pc += 2;
                         }
-                        System.out.println("Skipping next instruction if V[" + x + "] = " + ((int)V[x]) + " is pressed");
+                        if(trace) System.out.println("Skipping next instruction if V[" + x + "] = " + ((int)V[x]) + " is pressed");
                         break;
                     }
 
                     case 0x00A1: {// EXA1: Skip next instruction if key VX is NOT pressed
                         int x = (opcode & 0x0F00) >> 8;
                         int key = V[x];
+                        if(latency != null) latency.keyRead(key);
                         if (keys[key] == 0) {
                             pc += 4;
                         } else {
                             pc += 2;
                         }
-                        System.out.println("Skipping next instruction if V[" + x + "] = " + ((int)V[x]) + " is NOT pressed");
+                        if(trace) System.out.println("Skipping next instruction if V[" + x + "] = " + ((int)V[x]) + " is NOT pressed");
                         break;
                     }
 
                     default:
-                        System.err.println("Unexisting opcode");
-                        System.exit(0);
+                        opFault(opcode);
                         return;
                 }
                 break;
@@ -431,7 +467,7 @@ public class Chip {
                         int x = (opcode & 0x0F00) >> 8;
                         V[x] = (char) delay_timer;
                         pc += 2;
-                        System.out.println("V[" + x + "] has been set to " + delay_timer);
+                        if(trace) System.out.println("V[" + x + "] has been set to " + delay_timer);
                         break;
                     }
 
@@ -441,12 +477,13 @@ public class Chip {
                         int x = (opcode & 0x0F00) >> 8;
                         for(int i = 0; i < keys.length; i++) { // loop through all keys until the one that's set
                             if(keys[i] == 1) {
+                                if(latency != null) latency.keyRead(i);
                                 V[x] = (char)i; // can only be from 0 to 16
                                 pc += 2;
                                 break;
                             }
                         }
-                        System.out.println("Awaiting key press to be stored in V[" + x + "]");
+                        if(trace) System.out.println("Awaiting key press to be stored in V[" + x + "]");
                         break;
                     }
 
@@ -454,13 +491,15 @@ public class Chip {
                         int x = (opcode & 0x0F00) >> 8;
                         delay_timer = V[x];
                         pc += 2;
-                        System.out.println("Set delay_timer to V[" + x + "] = " + (int) V[x]);
+                        if(trace) System.out.println("Set delay_timer to V[" + x + "] = " + (int) V[x]);
                         break;
                     }
 
                     case 0x0018: { // FX18: Set sound timer to V[x]
                         int x = (opcode & 0x0F00) >> 8;
+                        boolean wasPlaying = sound_timer > 0;
                         sound_timer = V[x];
+                        if(wasPlaying != (sound_timer > 0)) emitSound();
                         pc += 2;
                         break;
                     }
@@ -468,7 +507,7 @@ public class Chip {
                     case 0x001E: { // FX1E: Adds VX to I
                         int x = (opcode & 0x0F00) >> 8;
                         I = (char) (I + V[x]);
-                        System.out.println("Adding V[" + x + "] = " + (int)V[x] + " to I");
+                        if(trace) System.out.println("Adding V[" + x + "] = " + (int)V[x] + " to I");
                         pc += 2;
                         break;
                     }
@@ -477,7 +516,7 @@ public class Chip {
                         int x = (opcode & 0x0F00) >> 8;
                         int character = V[x];
                         I = (char) (0x050 + (character * 5)); // start from 0x050, increment per digit by 5
-                        System.out.println("Setting I to Character V[" + x + "] = " + (int) V[x] + " Offset to 0x" + Integer.toHexString(I).toUpperCase());
+                        if(trace) System.out.println("Setting I to Character V[" + x + "] = " + (int) V[x] + " Offset to 0x" + Integer.toHexString(I).toUpperCase());
                         pc += 2;
                         break;
                     }
@@ -493,7 +532,7 @@ public class Chip {
                         memory[I] = (char) hundreds;
                         memory[I + 1] = (char) tens;
                         memory[I + 2] = (char) value;
-                        System.out.println("Storing Binary-Coded Decimal V[" + x + "] = " + (int)(V[(opcode & 0x0F00) >> 8]) + " as {" + hundreds + ", " + tens + ", " + value + "}");
+                        if(trace) System.out.println("Storing Binary-Coded Decimal V[" + x + "] = " + (int)(V[(opcode & 0x0F00) >> 8]) + " as {" + hundreds + ", " + tens + ", " + value + "}");
                         pc += 2;
                         break;
                     }
@@ -503,7 +542,7 @@ public class Chip {
                         for(int i = 0; i <= x; i++) { // last point VX inclusive
                             memory[I + i] = V[i];
                         }
-                        System.out.println("Setting memory[" + Integer.toHexString(I & 0xFFFF).toUpperCase() + " + n] to the values of V[0] to V[" + x + "]");
+                        if(trace) System.out.println("Setting memory[" + Integer.toHexString(I & 0xFFFF).toUpperCase() + " + n] to the values of V[0] to V[" + x + "]");
                         pc += 2;
                         break;
                     }
@@ -513,29 +552,355 @@ public class Chip {
                         for(int i = 0; i <= x; i++) { // last point VX inclusive
                             V[i] = memory[I + i];
                         }
-                        System.out.println("Setting V[0] to V[" + x + "] to the values of memory[0x" + Integer.toHexString(I & 0xFFFF).toUpperCase() + "]");
+                        if(trace) System.out.println("Setting V[0] to V[" + x + "] to the values of memory[0x" + Integer.toHexString(I & 0xFFFF).toUpperCase() + "]");
                         I = (char)(I + x + 1); // original interpreter increments memory pointer
                         pc += 2;
                         break;
                     default:
-                        System.err.println("Unsupported Opcode!");
-                        System.exit(0);
+                        opFault(opcode);
                 }
                 break;
 
             default:
-                System.err.println("Unsupported Opcode!");
-                System.exit(0);
+                opFault(opcode);
         }
-        // at end of each round, check delay
-        if(sound_timer > 0) {
-            sound_timer--;
-            Audio.playSound("./assets_sound_effect.wav");
+    }
+
+    /*
+     * Handlers for DispatchTable, one per instruction
+     * they behave exactly like the cases in interpret() but do not trace
+     */
+
+    void op00E0(int opcode) { // Clear screen
+        for(int i = 0; i < display.length; i++) {
+            display[i] = 0;
         }
-        if(delay_timer > 0) {
-            delay_timer--;
+        pc += 2;
+        needRedraw = true;
+    }
+
+    void op00EE(int opcode) { // Returns from subroutine
+        stackPointer--;
+        pc = (char) (stack[stackPointer] + 2);
+    }
+
+    void op1NNN(int opcode) { // Jumps to address NNN
+        pc = (char) (opcode & 0x0FFF);
+    }
+
+    void op2NNN(int opcode) { // Calls subroutine at NNN
+        stack[stackPointer] = pc;
+        stackPointer++;
+        pc = (char) (opcode & 0x0FFF);
+    }
+
+    void op3XNN(int opcode) { // Skips the next instruction if VX equals NN
+        pc += V[(opcode & 0x0F00) >> 8] == (opcode & 0x00FF) ? 4 : 2;
+    }
+
+    void op4XNN(int opcode) { // Skips the next instruction if VX != NN
+        pc += V[(opcode & 0x0F00) >> 8] != (opcode & 0x00FF) ? 4 : 2;
+    }
+
+    void op5XY0(int opcode) { // Skips next instruction if VX equals VY
+        pc += V[(opcode & 0x0F00) >> 8] == V[(opcode & 0x00F0) >> 4] ? 4 : 2;
+    }
+
+    void op6XNN(int opcode) { // Set VX to NN
+        V[(opcode & 0x0F00) >> 8] = (char) (opcode & 0x00FF);
+        pc += 2;
+    }
+
+    void op7XNN(int opcode) { // Adds NN to VX
+        int x = (opcode & 0x0F00) >> 8;
+        V[x] = (char) ((V[x] + (opcode & 0x00FF)) & 0xFF);
+        pc += 2;
+    }
+
+    void op8XY0(int opcode) { // Sets VX to the value of VY
+        V[(opcode & 0x0F00) >> 8] = V[(opcode & 0x00F0) >> 4];
+        pc += 2;
+    }
+
+    void op8XY1(int opcode) { // Sets VX to VX or VY
+        int x = (opcode & 0x0F00) >> 8;
+        V[x] = (char) ((V[x] | V[(opcode & 0x00F0) >> 4]) & 0xFF);
+        pc += 2;
+    }
+
+    void op8XY2(int opcode) { // Sets VX to VX AND VY
+        int x = (opcode & 0x0F00) >> 8;
+        V[x] = (char) (V[x] & V[(opcode & 0x00F0) >> 4]);
+        pc += 2;
+    }
+
+    void op8XY3(int opcode) { // Sets VX to VX xor VY
+        int x = (opcode & 0x0F00) >> 8;
+        V[x] = (char) ((V[x] ^ V[(opcode & 0x00F0) >> 4]) & 0xFF);
+        pc += 2;
+    }
+
+    void op8XY4(int opcode) { // Adds VY to VX, VF is carry
+        int x = (opcode & 0x0F00) >> 8;
+        int y = (opcode & 0x00F0) >> 4;
+        V[0xF] = (char) (V[y] > 0xFF - V[x] ? 1 : 0); // VF first, like the switch
+        V[x] = (char) ((V[x] + V[y]) & 0xFF);
+        pc += 2;
+    }
+
+    void op8XY5(int opcode) { // VY is subtracted from VX, VF is 0 on borrow
+        int x = (opcode & 0x0F00) >> 8;
+        int y = (opcode & 0x00F0) >> 4;
+        V[0xF] = (char) (V[y] >= V[x] ? 0 : 1);
+        V[x] = (char) ((V[x] - V[y]) & 0xFF);
+        pc += 2;
+    }
+
+    void op8XY6(int opcode) { // Shift VX right by one, VF is the old LSB
+        int x = (opcode & 0x0F00) >> 8;
+        V[0xF] = (char) (V[x] & 0x1);
+        V[x] = (char) (V[x] >> 1);
+        pc += 2;
+    }
+
+    void op8XY7(int opcode) { // Sets VX to VY minus VX, VF is 0 on borrow
+        int x = (opcode & 0x0F00) >> 8;
+        int y = (opcode & 0x00F0) >> 4;
+        V[0xF] = (char) (V[x] > V[y] ? 1 : 0);
+        V[x] = (char) ((V[y] - V[x]) & 0xFF);
+        pc += 2;
+    }
+
+    void op8XYE(int opcode) { // Shift VX left by one, VF is the old MSB
+        int x = (opcode & 0x0F00) >> 8;
+        V[0xF] = (char) (V[x] & 0x80);
+        V[x] = (char) (V[x] << 1);
+        pc += 2;
+    }
+
+    void op9XY0(int opcode) { // Skips next instruction if VX does not equal VY
+        pc += V[(opcode & 0x0F00) >> 8] != V[(opcode & 0x00F0) >> 4] ? 4 : 2;
+    }
+
+    void opANNN(int opcode) { // Set I to NNN
+        I = (char) (opcode & 0x0FFF);
+        pc += 2;
+    }
+
+    void opBNNN(int opcode) { // Jumps to the address NNN plus V0
+        pc = (char) ((opcode & 0x0FFF) + (V[0] & 0xFF));
+    }
+
+    void opCXNN(int opcode) { // Set VX to a random number and NN
+        V[(opcode & 0x0F00) >> 8] = (char) (nextRandom() & opcode & 0x00FF);
+        pc += 2;
+    }
+
+    void opEX9E(int opcode) { // Skip next instruction if key VX is pressed
+        int key = V[(opcode & 0x0F00) >> 8];
+        if(latency != null) latency.keyRead(key);
+        pc += keys[key] == 1 ? 4 : 2;
+    }
+
+    void opEXA1(int opcode) { // Skip next instruction if key VX is NOT pressed
+        int key = V[(opcode & 0x0F00) >> 8];
+        if(latency != null) latency.keyRead(key);
+        pc += keys[key] == 0 ? 4 : 2;
+    }
+
+    void opFX07(int opcode) { // Set VX to the value of delay_timer
+        V[(opcode & 0x0F00) >> 8] = (char) delay_timer;
+        pc += 2;
+    }
+
+    void opFX0A(int opcode) { // A key press is awaited and then stored in VX
+        for(int i = 0; i < keys.length; i++) {
+            if(keys[i] == 1) {
+                if(latency != null) latency.keyRead(i);
+                V[(opcode & 0x0F00) >> 8] = (char) i;
+                pc += 2;
+                break;
+            }
+        }
+    }
+
+    void opFX15(int opcode) { // Set delay timer to VX
+        delay_timer = V[(opcode & 0x0F00) >> 8];
+        pc += 2;
+    }
+
+    void opFX18(int opcode) { // Set sound timer to VX
+        boolean wasPlaying = sound_timer > 0;
+        sound_timer = V[(opcode & 0x0F00) >> 8];
+        if(wasPlaying != (sound_timer > 0)) emitSound();
+        pc += 2;
+    }
+
+    void opFX1E(int opcode) { // Adds VX to I
+        I = (char) (I + V[(opcode & 0x0F00) >> 8]);
+        pc += 2;
+    }
+
+    void opFX29(int opcode) { // Sets I to the fontset sprite for the character VX
+        I = (char) (0x050 + (V[(opcode & 0x0F00) >> 8] * 5));
+        pc += 2;
+    }
+
+    void opFX33(int opcode) { // Store the binary-coded decimal of VX in I, I + 1 and I + 2
+        int value = V[(opcode & 0x0F00) >> 8];
+        memory[I] = (char) (value / 100);
+        memory[I + 1] = (char) ((value / 10) % 10);
+        memory[I + 2] = (char) (value % 10);
+        pc += 2;
+    }
+
+    void opFX55(int opcode) { // Stores V0 to VX in memory starting at address I
+        int x = (opcode & 0x0F00) >> 8;
+        for(int i = 0; i <= x; i++) {
+            memory[I + i] = V[i];
+        }
+        pc += 2;
+    }
+
+    void opFX65(int opcode) { // Fills V0 to VX with values from I
+        int x = (opcode & 0x0F00) >> 8;
+        for(int i = 0; i <= x; i++) {
+            V[i] = memory[I + i];
+        }
+        I = (char) (I + x + 1); // original interpreter increments memory pointer
+        pc += 2;
+    }
+
+    /**
+     * Every opcode value without an instruction ends up here, from either core
+     * pc stays on the opcode so the fault can be inspected, the front end decides whether to exit
+     */
+    void opFault(int opcode) {
+        emitOpcodeFault((char) opcode);
+        System.err.println("Unsupported Opcode!");
+        throw new UnsupportedOpcodeException(opcode, pc);
+    }
+
+    /**
+     * DXYN: Draw a sprite (X, Y) size (8, N). Sprite is located at I
+     * shared by every core so they draw the same way
+     */
+    void drawSprite(int opcode) {
+        // Default width is 8, goes into single byte of 8 pixels
+        // N is the height of image
+        // Drawing by XOR-ing to the screen
+        // Check collision and set V[0xF]
+        // Read image from I
+        int x = V[(opcode & 0x0F00) >> 8];
+        int y = V[(opcode & 0x00F0) >> 4];
+        int height = opcode & 0x000F; // no need shift as last nibble
+
+        V[0xF] = 0; // collision flag
+        int toggled = 0; // pixels changed by this sprite
+
+        for(int _y = 0; _y < height; _y++) {
+            int line = memory[I + _y]; // add to address pointer to get to next line of image
+            for(int _x = 0; _x < 8; _x++) {
+                int pixel = line & (0x80 >> _x); // ensures byte is drawn from left to right
+                if(pixel != 0) {
+                    int totalX = x + _x;
+                    int totalY = y + _y;
+
+                    // screen wrapping
+                    // allows paddles to move from top of screen to bottom of screen border
+                    // while totalX > 64-> totalX -= 64
+                    totalX = totalX % 64; // keep remainder
+                    totalY = totalY % 32; // keep remainder
+
+                    // display is 64x32
+                    // first pixel on 2nd line - display[64]
+                    // first pixel on 3rd line - display[128], so on...
+                    int index = (totalY * WIDTH_OF_SCREEN) + totalX;
+
+                    // there is collision
+                    if(display[index] == 1) V[0xF] = 1;
+
+                    display[index] ^= 1; // XOR
+                    toggled++;
+                }
+            }
+        }
+        pc += 2;
+        needRedraw = true; // flickering effect
+        if(latency != null && toggled > 0) latency.framebufferChanged(frameBuffer.getPublishedSequence() + 1); // shows up with the next publishFrame
+        if(!inDrawBurst) beginDrawBurst();
+        drawBurstSprites++;
+        drawBurstPixels += toggled;
+    }
+
+    private void beginDrawBurst() {
+        inDrawBurst = true;
+        drawBurstSprites = 0;
+        drawBurstPixels = 0;
+        // the first event created starts the flight recorder (~400 ms), so only once a recording exists
+        if(!FlightRecorder.isInitialized()) return;
+        DrawBurstEvent event = new DrawBurstEvent();
+        if(event.isEnabled()) {
+            event.begin();
+            drawBurst = event;
+        }
+    }
+
+    private void endDrawBurst() {
+        inDrawBurst = false;
+        if(drawBurst != null) {
+            drawBurst.end();
+            if(drawBurst.shouldCommit()) {
+                drawBurst.sprites = drawBurstSprites;
+                drawBurst.pixels = drawBurstPixels;
+                drawBurst.commit();
+            }
+            drawBurst = null;
         }
-        // execute opcode
+    }
+
+    /**
+     * Sound timer went from 0 to running or back
+     */
+    private void emitSound() {
+        if(!FlightRecorder.isInitialized()) return;
+        SoundEvent event = new SoundEvent();
+        if(event.shouldCommit()) {
+            event.on = sound_timer > 0;
+            event.soundTimer = sound_timer;
+            event.commit();
+        }
+    }
+
+    private void emitOpcodeFault(char opcode) {
+        if(!FlightRecorder.isInitialized()) return;
+        OpcodeFaultEvent event = new OpcodeFaultEvent();
+        if(event.shouldCommit()) {
+            event.opcode = opcode;
+            event.pc = pc;
+            event.commit();
+        }
+    }
+
+    /**
+     * xorshift32, cheap and fully determined by randomSeed
+     * @return
+     * random number from 0 to 255
+     */
+    private int nextRandom() {
+        int r = randomSeed;
+        r ^= r << 13;
+        r ^= r >>> 17;
+        r ^= r << 5;
+        randomSeed = r;
+        return (r >>> 24) & 0xFF;
+    }
+
+    /**
+     * Makes CXNN repeatable, eg to run two chips in lockstep
+     */
+    public void setRandomSeed(int seed) {
+        randomSeed = seed == 0 ? 1 : seed;
     }
 
     /**
@@ -547,6 +912,23 @@ public class Chip {
         return display;
     }
 
+    /**
+     * Frames completed by the chip, safe to read from the rendering thread
+     * @return
+     * triple buffer holding the newest completed frame
+     */
+    public FrameBuffer getFrameBuffer() {
+        return frameBuffer;
+    }
+
+    /**
+     * Hands the display to the renderer, called by the front ends when they take the redraw flag
+     * the interpreter itself never copies a frame, runs without a renderer don't pay for it
+     */
+    public void publishFrame() {
+        frameBuffer.publish(display);
+    }
+
     /**
      * Checks if there is a redraw needed
      * @return
@@ -563,12 +945,73 @@ public class Chip {
         needRedraw = false;
     }
 
+    /**
+     * Attached by the debugger while it is armed, null otherwise
+     */
+    void setDebugger(Debugger debugger) {
+        this.debugger = debugger;
+    }
+
+    public int getPC() {
+        return pc;
+    }
+
+    public int getI() {
+        return I;
+    }
+
+    public int getRegister(int x) {
+        return V[x];
+    }
+
+    /**
+     * @return
+     * copy of registers V0 to VF
+     */
+    public int[] getRegisters() {
+        int[] registers = new int[V.length];
+        for(int i = 0; i < V.length; i++) {
+            registers[i] = V[i];
+        }
+        return registers;
+    }
+
+    public int readMemory(int address) {
+        return memory[address];
+    }
+
+    /**
+     * @return
+     * copy of the call stack, only the first getStackPointer() entries are in use
+     */
+    public int[] getStack() {
+        int[] copy = new int[stack.length];
+        for(int i = 0; i < stack.length; i++) {
+            copy[i] = stack[i];
+        }
+        return copy;
+    }
+
+    public int getStackPointer() {
+        return stackPointer;
+    }
+
+    public int getDelayTimer() {
+        return delay_timer;
+    }
+
+    public int getSoundTimer() {
+        return sound_timer;
+    }
+
     /**
      * Loads the program into the memory
      * @param file
      * The location of the program
      */
     public void loadProgram(String file) {
+        RomLoadEvent event = FlightRecorder.isInitialized() ? new RomLoadEvent() : null;
+        if(event != null) event.begin();
         DataInputStream input = null;
         try {
             // read every byte from file
@@ -580,6 +1023,14 @@ public class Chip {
                 memory[0x200 + offset] = (char)(input.readByte() & 0xFF); // & by 256
                 offset++;
             }
+            if(event != null) {
+                event.end();
+                if(event.shouldCommit()) {
+                    event.file = file;
+                    event.size = offset;
+                    event.commit();
+                }
+            }
         } catch (IOException e) {
             e.printStackTrace();
             System.exit(0);
@@ -590,6 +1041,80 @@ public class Chip {
         }
     }
 
+    /**
+     * Copies the complete machine state into a snapshot
+     * @param state
+     * snapshot to overwrite, no allocation happens
+     */
+    public void saveState(ChipState state) {
+        System.arraycopy(memory, 0, state.memory, 0, memory.length);
+        System.arraycopy(V, 0, state.V, 0, V.length);
+        state.I = I;
+        state.pc = pc;
+        System.arraycopy(stack, 0, state.stack, 0, stack.length);
+        state.stackPointer = stackPointer;
+        state.delay_timer = delay_timer;
+        state.sound_timer = sound_timer;
+        System.arraycopy(keys, 0, state.keys, 0, keys.length);
+        System.arraycopy(display, 0, state.display, 0, display.length);
+        state.needRedraw = needRedraw;
+        state.randomSeed = randomSeed;
+    }
+
+    /**
+     * Continues from a snapshot taken with saveState
+     * @param state
+     * snapshot to restore
+     */
+    public void loadState(ChipState state) {
+        System.arraycopy(state.memory, 0, memory, 0, memory.length);
+        System.arraycopy(state.V, 0, V, 0, V.length);
+        I = state.I;
+        pc = state.pc;
+        System.arraycopy(state.stack, 0, stack, 0, stack.length);
+        stackPointer = state.stackPointer;
+        delay_timer = state.delay_timer;
+        sound_timer = state.sound_timer;
+        System.arraycopy(state.keys, 0, keys, 0, keys.length);
+        System.arraycopy(state.display, 0, display, 0, display.length);
+        needRedraw = state.needRedraw;
+        randomSeed = state.randomSeed;
+    }
+
+    /**
+     * Start following key presses through the chip, null stops it
+     */
+    public void setInputLatency(InputLatency latency) {
+        this.latency = latency;
+    }
+
+    public InputLatency getInputLatency() {
+        return latency;
+    }
+
+    /**
+     * Picks the interpreter core, kept across init()
+     */
+    public void setCore(Core core) {
+        this.core = core;
+    }
+
+    public Core getCore() {
+        return core;
+    }
+
+    public void setMuted(boolean muted) {
+        this.muted = muted;
+    }
+
+    public void setTrace(boolean trace) {
+        this.trace = trace;
+    }
+
+    public boolean isTrace() {
+        return trace;
+    }
+
     public void loadFontset() {
         for(int i = 0; i < ChipData.fontset.length; i++) {
             memory[0x50 + i] = (char) (ChipData.fontset[i] & 0xFF); // & by 256
@@ -0,0 +1,182 @@
+package chip;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Snapshot of everything a Chip needs to continue running
+ * arrays are allocated once, so the same state can be saved into over and over
+ */
+public class ChipState {
+
+    private static final int MAGIC = 0xC8C9; // marks a chip 8 state file, followed by the format version
+    private static final int MAGIC_V1 = 0xC8C8; // files written before there was a version, format 1
+    private static final int VERSION = 2; // 2: random seed appended
+
+    final char[] memory = new char[4096];
+    final char[] V = new char[16];
+    char I;
+    char pc;
+    final char[] stack = new char[16];
+    int stackPointer;
+    int delay_timer;
+    int sound_timer;
+    final byte[] keys = new byte[16];
+    final byte[] display = new byte[64 * 32];
+    boolean needRedraw;
+    int randomSeed;
+
+    /**
+     * FNV-1a over registers, memory and display
+     * @return
+     * hash that changes whenever the machine state does
+     */
+    public long hash() {
+        long h = 0xCBF29CE484222325L;
+        for(char c : memory) h = (h ^ c) * 0x100000001B3L;
+        for(char c : V) h = (h ^ c) * 0x100000001B3L;
+        for(char c : stack) h = (h ^ c) * 0x100000001B3L;
+        for(byte b : display) h = (h ^ b) * 0x100000001B3L;
+        h = (h ^ I) * 0x100000001B3L;
+        h = (h ^ pc) * 0x100000001B3L;
+        h = (h ^ stackPointer) * 0x100000001B3L;
+        h = (h ^ delay_timer) * 0x100000001B3L;
+        h = (h ^ sound_timer) * 0x100000001B3L;
+        h = (h ^ randomSeed) * 0x100000001B3L;
+        return h;
+    }
+
+    /**
+     * Exact comparison of the machine state, keys and redraw flag are ignored
+     */
+    public boolean sameAs(ChipState other) {
+        return Arrays.equals(memory, other.memory) && Arrays.equals(V, other.V)
+                && Arrays.equals(stack, other.stack) && Arrays.equals(display, other.display)
+                && I == other.I && pc == other.pc && stackPointer == other.stackPointer
+                && delay_timer == other.delay_timer && sound_timer == other.sound_timer
+                && randomSeed == other.randomSeed;
+    }
+
+    /**
+     * @return
+     * registers, pointers and timers on a few lines
+     */
+    public String dump() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("PC=").append(hex(pc)).append(" I=").append(hex(I))
+                .append(" SP=").append(stackPointer)
+                .append(" DT=").append(delay_timer).append(" ST=").append(sound_timer)
+                .append(" RNG=").append(Integer.toHexString(randomSeed).toUpperCase())
+                .append(" opcode=").append(hex((memory[pc & 0xFFF] << 8) | memory[(pc + 1) & 0xFFF]))
+                .append('\n');
+        for(int i = 0; i < V.length; i++) {
+            sb.append("V[").append(Integer.toHexString(i).toUpperCase()).append("]=").append(hex(V[i]));
+            sb.append(i == 7 || i == V.length - 1 ? '\n' : ' ');
+        }
+        sb.append("stack=");
+        for(int i = 0; i < stackPointer; i++) sb.append(hex(stack[i])).append(' ');
+        return sb.append('\n').toString();
+    }
+
+    /**
+     * @return
+     * every memory and display location where the two states differ
+     */
+    public String diff(ChipState other) {
+        StringBuilder sb = new StringBuilder();
+        for(int i = 0; i < memory.length; i++) {
+            if(memory[i] != other.memory[i]) {
+                sb.append("memory[").append(hex(i)).append("] ").append(hex(memory[i]))
+                        .append(" != ").append(hex(other.memory[i])).append('\n');
+            }
+        }
+        for(int i = 0; i < display.length; i++) {
+            if(display[i] != other.display[i]) {
+                sb.append("display[").append(i % 64).append(',').append(i / 64).append("] ")
+                        .append(display[i]).append(" != ").append(other.display[i]).append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String hex(int value) {
+        return Integer.toHexString(value).toUpperCase();
+    }
+
+    /**
+     * Writes the snapshot to a file
+     * @param file
+     * The location of the state file
+     */
+    public void save(String file) throws IOException {
+        DataOutputStream output = null;
+        try {
+            output = new DataOutputStream(new FileOutputStream(new File(file)));
+            output.writeShort(MAGIC);
+            output.writeByte(VERSION);
+            for(char c : memory) output.writeByte(c);
+            for(char c : V) output.writeByte(c);
+            output.writeShort(I);
+            output.writeShort(pc);
+            for(char c : stack) output.writeShort(c);
+            output.writeByte(stackPointer);
+            output.writeByte(delay_timer);
+            output.writeByte(sound_timer);
+            output.write(keys);
+            output.write(display);
+            output.writeBoolean(needRedraw);
+            output.writeInt(randomSeed);
+        } finally {
+            if(null != output) {
+                try { output.close(); } catch (IOException ex) { }
+            }
+        }
+    }
+
+    /**
+     * Reads a snapshot written by save
+     * @param file
+     * The location of the state file
+     */
+    public void load(String file) throws IOException {
+        DataInputStream input = null;
+        try {
+            input = new DataInputStream(new FileInputStream(new File(file)));
+            int magic = input.readUnsignedShort();
+            int version;
+            if(magic == MAGIC) {
+                version = input.readUnsignedByte();
+            } else if(magic == MAGIC_V1) {
+                version = 1;
+            } else {
+                throw new IOException("Not a chip 8 state file: " + file);
+            }
+            if(version > VERSION) {
+                throw new IOException("Unsupported state file version " + version + " (this build reads up to " + VERSION + "): " + file);
+            }
+            for(int i = 0; i < memory.length; i++) memory[i] = (char) input.readUnsignedByte();
+            for(int i = 0; i < V.length; i++) V[i] = (char) input.readUnsignedByte();
+            I = (char) input.readUnsignedShort();
+            pc = (char) input.readUnsignedShort();
+            for(int i = 0; i < stack.length; i++) stack[i] = (char) input.readUnsignedShort();
+            stackPointer = input.readUnsignedByte();
+            delay_timer = input.readUnsignedByte();
+            sound_timer = input.readUnsignedByte();
+            input.readFully(keys);
+            input.readFully(display);
+            needRedraw = input.readBoolean();
+            // format 1 has no seed, start a fresh sequence like init() does
+            randomSeed = version >= 2 ? input.readInt() : new Random().nextInt() | 1;
+        } finally {
+            if(null != input) {
+                try { input.close(); } catch (IOException ex) { }
+            }
+        }
+    }
+}
@@ -0,0 +1,307 @@
+package chip;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class Debugger {
+
+    /**
+     * Callback for whenever the debugger halts the chip
+     */
+    public interface BreakListener {
+        void onBreak(Debugger debugger, String reason);
+    }
+
+    private static final int MEMORY_SIZE = 4096;
+
+    // watchpoint flags, can be combined
+    public static final int WATCH_READ = 1;
+    public static final int WATCH_WRITE = 2;
+
+    /**
+     * Halt when V[register] becomes value
+     */
+    private static class RegisterCondition {
+        final int register;
+        final int value;
+        boolean matched; // held after the previous instruction
+
+        RegisterCondition(int register, int value) {
+            this.register = register;
+            this.value = value;
+        }
+    }
+
+    private final Chip chip;
+    private BreakListener listener;
+
+    /**
+     * breakpoints and watchpoints are kept per address
+     * so checking them costs an array lookup
+     */
+    private final boolean[] breakpoints = new boolean[MEMORY_SIZE];
+    private int breakpointCount;
+    private final byte[] watchpoints = new byte[MEMORY_SIZE]; // WATCH_READ | WATCH_WRITE
+    private int watchpointCount;
+    private final List<RegisterCondition> registerConditions = new ArrayList<>();
+
+    private boolean paused;
+    private boolean pauseNext; // halt before the next instruction
+    private boolean stepping; // execute one instruction, then halt
+    private boolean skipChecksOnce; // do not hit the breakpoint we are resuming from
+    private int stepOverReturn = -1; // address to halt at after a 2NNN
+    private int stepOverDepth;
+    private String breakReason;
+
+    public Debugger(Chip chip) {
+        this.chip = chip;
+    }
+
+    public synchronized void setBreakListener(BreakListener listener) {
+        this.listener = listener;
+    }
+
+    public synchronized void addBreakpoint(int address) {
+        if(!breakpoints[address]) {
+            breakpoints[address] = true;
+            breakpointCount++;
+        }
+        updateArmed();
+    }
+
+    public synchronized void removeBreakpoint(int address) {
+        if(breakpoints[address]) {
+            breakpoints[address] = false;
+            breakpointCount--;
+        }
+        updateArmed();
+    }
+
+    /**
+     * Watch the memory range [start, end] for reads and/or writes
+     * Hit by FX55, FX33 (write), FX65 and DXYN (read)
+     */
+    public synchronized void addWatchpoint(int start, int end, int flags) {
+        for(int address = start; address <= end; address++) {
+            if(watchpoints[address] == 0 && flags != 0) watchpointCount++;
+            watchpoints[address] |= flags;
+        }
+        updateArmed();
+    }
+
+    public synchronized void removeWatchpoint(int start, int end) {
+        for(int address = start; address <= end; address++) {
+            if(watchpoints[address] != 0) watchpointCount--;
+            watchpoints[address] = 0;
+        }
+        updateArmed();
+    }
+
+    /**
+     * Halt as soon as V[register] becomes equal to value
+     */
+    public synchronized void addRegisterBreakpoint(int register, int value) {
+        registerConditions.add(new RegisterCondition(register, value & 0xFF));
+        updateArmed();
+    }
+
+    public synchronized void clearRegisterBreakpoints() {
+        registerConditions.clear();
+        updateArmed();
+    }
+
+    /**
+     * Remove every breakpoint, watchpoint and condition and let the chip run
+     */
+    public synchronized void clearAll() {
+        for(int i = 0; i < MEMORY_SIZE; i++) {
+            breakpoints[i] = false;
+            watchpoints[i] = 0;
+        }
+        breakpointCount = 0;
+        watchpointCount = 0;
+        registerConditions.clear();
+        stepOverReturn = -1;
+        resume();
+    }
+
+    /**
+     * Halt before the next instruction
+     */
+    public synchronized void pause() {
+        pauseNext = true;
+        updateArmed();
+    }
+
+    public synchronized void resume() {
+        if(paused) skipChecksOnce = true;
+        paused = false;
+        pauseNext = false;
+        stepping = false;
+        updateArmed();
+    }
+
+    /**
+     * Execute a single instruction, then halt again
+     */
+    public synchronized void step() {
+        skipChecksOnce = true;
+        stepping = true;
+        paused = false;
+        pauseNext = false;
+        updateArmed();
+    }
+
+    /**
+     * Like step, but a 2NNN call runs until its subroutine has returned
+     */
+    public synchronized void stepOver() {
+        int pc = chip.getPC();
+        int opcode = (chip.readMemory(pc) << 8) | chip.readMemory(pc + 1);
+        if((opcode & 0xF000) != 0x2000) {
+            step();
+            return;
+        }
+        stepOverReturn = pc + 2;
+        stepOverDepth = chip.getStackPointer();
+        resume();
+        skipChecksOnce = true; // resume only sets this when paused
+    }
+
+    public synchronized boolean isPaused() {
+        return paused;
+    }
+
+    public synchronized String getBreakReason() {
+        return breakReason;
+    }
+
+    /**
+     * Called by the chip before each instruction, but only while armed
+     * @return
+     * If the instruction may be executed
+     */
+    boolean beforeExecute(char opcode) {
+        String reason;
+        BreakListener notify;
+        synchronized(this) {
+            if(paused) return false;
+            reason = checkBreak(opcode);
+            if(reason == null) return true;
+            halt(reason);
+            notify = listener;
+        }
+        // outside the lock, a listener that waits for the UI thread must not block isPaused() there
+        if(chip.isTrace()) System.out.println("Debugger: " + reason);
+        if(notify != null) notify.onBreak(this, reason);
+        return false;
+    }
+
+    /**
+     * @return
+     * why the chip has to halt before this instruction, null if it may run
+     */
+    private String checkBreak(char opcode) {
+        if(skipChecksOnce) {
+            skipChecksOnce = false;
+            if(stepping) {
+                stepping = false;
+                pauseNext = true;
+            }
+            updateRegisterConditions();
+            updateArmed();
+            return null;
+        }
+
+        int pc = chip.getPC();
+        String reason = null;
+        if(pauseNext) {
+            reason = "Paused";
+        } else if(stepOverReturn == pc && chip.getStackPointer() == stepOverDepth) {
+            reason = "Stepped over call";
+            stepOverReturn = -1;
+        } else if(breakpoints[pc & 0xFFF]) {
+            reason = "Breakpoint at " + Integer.toHexString(pc).toUpperCase();
+        } else if(watchpointCount > 0) {
+            reason = checkWatchpoints(opcode);
+        }
+        if(reason == null) reason = checkRegisterConditions();
+        return reason;
+    }
+
+    /**
+     * Works out which memory range the opcode is about to touch
+     */
+    private String checkWatchpoints(char opcode) {
+        int x = (opcode & 0x0F00) >> 8;
+        int start = chip.getI();
+        int length;
+        int access;
+        if((opcode & 0xF000) == 0xD000) { // DXYN reads N lines of sprite
+            length = opcode & 0x000F;
+            access = WATCH_READ;
+        } else if((opcode & 0xF0FF) == 0xF055) { // FX55 writes V0 to VX
+            length = x + 1;
+            access = WATCH_WRITE;
+        } else if((opcode & 0xF0FF) == 0xF033) { // FX33 writes 3 BCD digits
+            length = 3;
+            access = WATCH_WRITE;
+        } else if((opcode & 0xF0FF) == 0xF065) { // FX65 reads V0 to VX
+            length = x + 1;
+            access = WATCH_READ;
+        } else {
+            return null;
+        }
+        for(int address = start; address < start + length && address < MEMORY_SIZE; address++) {
+            if((watchpoints[address] & access) != 0) {
+                return (access == WATCH_READ ? "Read" : "Write") + " watchpoint at " + Integer.toHexString(address).toUpperCase();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Register conditions only fire when they become true, not on every instruction they hold
+     */
+    private String checkRegisterConditions() {
+        String reason = null;
+        for(RegisterCondition condition : registerConditions) {
+            boolean matches = chip.getRegister(condition.register) == condition.value;
+            if(matches && !condition.matched && reason == null) {
+                reason = "V[" + condition.register + "] == " + condition.value;
+            }
+            condition.matched = matches;
+        }
+        return reason;
+    }
+
+    private void updateRegisterConditions() {
+        for(RegisterCondition condition : registerConditions) {
+            condition.matched = chip.getRegister(condition.register) == condition.value;
+        }
+    }
+
+    private void halt(String reason) {
+        paused = true;
+        pauseNext = false;
+        breakReason = reason;
+    }
+
+    /**
+     * Only hand ourselves to the chip while there is something to check,
+     * an unarmed chip runs its plain path
+     */
+    private void updateArmed() {
+        boolean armed = paused || pauseNext || stepping || skipChecksOnce
+                || breakpointCount > 0 || watchpointCount > 0
+                || !registerConditions.isEmpty() || stepOverReturn >= 0;
+        chip.setDebugger(armed ? this : null);
+    }
+
+    /**
+     * Detach from the chip completely
+     */
+    public synchronized void detach() {
+        chip.setDebugger(null);
+    }
+}
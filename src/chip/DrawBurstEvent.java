@@ -0,0 +1,24 @@
+package chip;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("chip8.DrawBurst")
+@Label("Draw Burst")
+@Category({"Chip 8", "Core"})
+@Description("Run of consecutive DXYN instructions")
+@Enabled(false)
+@StackTrace(false)
+class DrawBurstEvent extends Event {
+
+    @Label("Sprites")
+    int sprites;
+
+    @Label("Pixels Toggled")
+    int pixels;
+}
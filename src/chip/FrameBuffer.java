@@ -0,0 +1,76 @@
+package chip;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Triple buffered handoff of completed frames between the emulation thread and the renderer
+ * the chip writes into the back buffer, the renderer reads the front buffer
+ * and the middle buffer is swapped atomically between them
+ * neither side ever blocks or allocates
+ */
+public class FrameBuffer {
+
+    private static final int INDEX_MASK = 0x3;
+    private static final int FRESH = 0x4; // middle holds a frame the renderer has not taken yet
+
+    private final byte[][] buffers;
+    private final long[] sequences = new long[3]; // publish number of the frame in each buffer
+    private long published; // only touched by the writer
+
+    /**
+     * index of the middle buffer and the FRESH bit
+     * only ever changed with a single getAndSet
+     */
+    private final AtomicInteger middle;
+
+    private int back; // only touched by the writer
+    private int front; // only touched by the reader
+
+    public FrameBuffer(int size) {
+        buffers = new byte[3][size];
+        back = 0;
+        middle = new AtomicInteger(1);
+        front = 2;
+    }
+
+    /**
+     * Copy a completed frame into the back buffer and hand it over
+     * @param display
+     * current state of display
+     */
+    public void publish(byte[] display) {
+        System.arraycopy(display, 0, buffers[back], 0, display.length);
+        sequences[back] = ++published; // visible to the reader through the getAndSet below
+        int previous = middle.getAndSet(back | FRESH);
+        back = previous & INDEX_MASK; // old middle becomes the new back buffer
+    }
+
+    /**
+     * Take the newest completed frame, or keep the current one if nothing new was published
+     * @return
+     * frame the renderer may read until the next acquire
+     */
+    public byte[] acquire() {
+        if((middle.get() & FRESH) != 0) {
+            int previous = middle.getAndSet(front);
+            front = previous & INDEX_MASK;
+        }
+        return buffers[front];
+    }
+
+    /**
+     * @return
+     * number of the last publish, called from the writer
+     */
+    public long getPublishedSequence() {
+        return published;
+    }
+
+    /**
+     * @return
+     * number of the publish the frame returned by the last acquire came from, called from the reader
+     */
+    public long getAcquiredSequence() {
+        return sequences[front];
+    }
+}
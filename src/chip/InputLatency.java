@@ -0,0 +1,98 @@
+package chip;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Follows key presses from the window through the chip to the screen
+ * key pressed (ChipFrame) -> key read by EX9E/EXA1/FX0A -> DXYN changes the framebuffer -> ChipPanel painted
+ * one histogram per stage plus the whole input to photon time
+ */
+public class InputLatency {
+
+    public enum Stage {
+        KEY_TO_READ, // waiting for the program to look at the key
+        READ_TO_DRAW, // program reacting until the screen changes
+        DRAW_TO_PAINT, // handoff and painting on the EDT
+        KEY_TO_PAINT // input to photon
+    }
+
+    private final LatencyHistogram[] histograms = new LatencyHistogram[Stage.values().length];
+
+    private final AtomicLongArray pressed = new AtomicLongArray(16); // press time not read yet, 0 if none
+
+    // only touched by the emulation thread
+    private long pendingPress; // press that was read but has not reached the screen, 0 if none
+    private long pendingRead;
+
+    private final AtomicReference<long[]> awaitingPaint = new AtomicReference<>(); // {press, draw, frame published with the change}
+
+    public InputLatency() {
+        for(int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Key went down, called from the window
+     */
+    public void keyPressed(int key) {
+        pressed.compareAndSet(key, 0, System.nanoTime()); // keep the oldest unread press
+    }
+
+    /**
+     * The chip looked at a key, called from the emulation thread
+     */
+    void keyRead(int key) {
+        long press = pressed.get(key);
+        if(press == 0 || !pressed.compareAndSet(key, press, 0)) return;
+        long now = System.nanoTime();
+        histograms[Stage.KEY_TO_READ.ordinal()].record(now - press);
+        if(pendingPress == 0) {
+            pendingPress = press;
+            pendingRead = now;
+        }
+    }
+
+    /**
+     * DXYN toggled at least one pixel, called from the emulation thread
+     * @param sequence
+     * publish number of the frame that holds the change
+     */
+    void framebufferChanged(long sequence) {
+        if(pendingPress == 0) return;
+        long now = System.nanoTime();
+        histograms[Stage.READ_TO_DRAW.ordinal()].record(now - pendingRead);
+        awaitingPaint.compareAndSet(null, new long[] { pendingPress, now, sequence }); // one per key press, never per frame
+        pendingPress = 0;
+    }
+
+    /**
+     * A frame has been painted completely, called from the EDT
+     * @param sequence
+     * publish number of the painted frame, a change published after it is left for a later paint
+     */
+    public void painted(long sequence) {
+        long[] pending = awaitingPaint.get();
+        if(pending == null || pending[2] > sequence || !awaitingPaint.compareAndSet(pending, null)) return;
+        long now = System.nanoTime();
+        histograms[Stage.DRAW_TO_PAINT.ordinal()].record(now - pending[1]);
+        histograms[Stage.KEY_TO_PAINT.ordinal()].record(now - pending[0]);
+    }
+
+    public LatencyHistogram getHistogram(Stage stage) {
+        return histograms[stage.ordinal()];
+    }
+
+    /**
+     * @return
+     * one line per stage
+     */
+    public String report() {
+        StringBuilder sb = new StringBuilder("Input latency:\n");
+        for(Stage stage : Stage.values()) {
+            sb.append(String.format("  %-13s %s%n", stage, histograms[stage.ordinal()]));
+        }
+        return sb.toString();
+    }
+}
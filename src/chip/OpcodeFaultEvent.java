@@ -0,0 +1,27 @@
+package chip;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Unsigned;
+
+@Name("chip8.OpcodeFault")
+@Label("Unsupported Opcode")
+@Category({"Chip 8", "Core"})
+@Description("The chip met an opcode it can not execute")
+@Enabled(false)
+@StackTrace(false)
+class OpcodeFaultEvent extends Event {
+
+    @Label("Opcode")
+    @Unsigned
+    int opcode;
+
+    @Label("Program Counter")
+    @Unsigned
+    int pc;
+}
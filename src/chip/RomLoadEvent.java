@@ -0,0 +1,26 @@
+package chip;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("chip8.RomLoad")
+@Label("ROM Load")
+@Category({"Chip 8", "Core"})
+@Description("Chip.loadProgram reading a program into memory")
+@Enabled(false)
+@StackTrace(false)
+class RomLoadEvent extends Event {
+
+    @Label("File")
+    String file;
+
+    @Label("Size")
+    @DataAmount
+    int size;
+}
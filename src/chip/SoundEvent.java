@@ -0,0 +1,24 @@
+package chip;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("chip8.Sound")
+@Label("Sound")
+@Category({"Chip 8", "Core"})
+@Description("Sound timer started or stopped the beep")
+@Enabled(false)
+@StackTrace(false)
+class SoundEvent extends Event {
+
+    @Label("On")
+    boolean on;
+
+    @Label("Sound Timer")
+    int soundTimer;
+}
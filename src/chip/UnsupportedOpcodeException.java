@@ -0,0 +1,27 @@
+package chip;
+
+/**
+ * Thrown by either core for opcodes without an instruction
+ * the front ends print it and exit with status 1
+ */
+public class UnsupportedOpcodeException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int opcode;
+    private final int pc;
+
+    public UnsupportedOpcodeException(int opcode, int pc) {
+        super("Unsupported opcode " + Integer.toHexString(opcode).toUpperCase() + " at " + Integer.toHexString(pc).toUpperCase());
+        this.opcode = opcode;
+        this.pc = pc;
+    }
+
+    public int getOpcode() {
+        return opcode;
+    }
+
+    public int getPC() {
+        return pc;
+    }
+}
@@ -1,20 +1,28 @@
 package emu;
 
 import chip.Chip;
+import chip.InputLatency;
 
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
 
-public class ChipFrame extends JFrame implements KeyListener {
+public class ChipFrame extends JFrame implements KeyListener, ChipView {
 
     private static final long serialVersionUID = 1L;
+    private Chip chip;
     private ChipPanel panel;
     private int[] keyBuffer; // actual key state memory, only signed up at start of each operation
     private int[] keyIdToKey;
 
     public ChipFrame(Chip c) {
+        // set up before the window exists, key events may arrive as soon as it is visible
+        chip = c;
+        keyIdToKey = new int[256]; // array that maps each button
+        keyBuffer = new int[16];
+        fillKeyIds();
+
         /**
          * window to update and fit all elements inside viewport
          * if too small, extend
@@ -34,10 +42,6 @@ public class ChipFrame extends JFrame implements KeyListener {
         pack();
         setVisible(true);
         addKeyListener(this); // enable keyword controller
-
-        keyIdToKey = new int[256]; // array that maps each button
-        keyBuffer = new int[16];
-        fillKeyIds();
     }
 
     private void fillKeyIds() {
@@ -65,6 +69,10 @@ public class ChipFrame extends JFrame implements KeyListener {
     @Override
     public void keyPressed(KeyEvent e) {
         if(keyIdToKey[e.getKeyCode()] != -1) { // user pressed actual keypad input
+            InputLatency latency = chip.getInputLatency();
+            if(latency != null && keyBuffer[keyIdToKey[e.getKeyCode()]] == 0) { // ignore auto repeat
+                latency.keyPressed(keyIdToKey[e.getKeyCode()]);
+            }
             keyBuffer[keyIdToKey[e.getKeyCode()]] = 1; // pressed
         }
     }
@@ -4,6 +4,7 @@ import javax.swing.*;
 import java.awt.*;
 
 import chip.Chip;
+import chip.InputLatency;
 
 public class ChipPanel extends JPanel {
 
@@ -14,7 +15,8 @@ public class ChipPanel extends JPanel {
     }
 
     public void paint(Graphics g) {
-        byte[] display = chip.getDisplay();
+        byte[] display = chip.getFrameBuffer().acquire(); // newest completed frame, never the one being drawn
+        long shown = chip.getFrameBuffer().getAcquiredSequence();
         for(int i = 0; i < display.length; i++) {
            if(display[i] == 0) // set color
                g.setColor(Color.BLACK);
@@ -30,5 +32,7 @@ public class ChipPanel extends JPanel {
 
            g.fillRect(x*10, y*10, 10, 10); // dimensions upscaled 10x
         }
+        InputLatency latency = chip.getInputLatency();
+        if(latency != null) latency.painted(shown); // frame is complete
     }
 }
@@ -0,0 +1,12 @@
+package emu;
+
+/**
+ * What a runner needs from the window
+ * lets runners that must stay headless capable avoid naming any AWT/Swing class
+ */
+public interface ChipView {
+
+    int[] getKeyBuffer();
+
+    void repaint();
+}
@@ -0,0 +1,115 @@
+package emu;
+
+import chip.Chip;
+import chip.Debugger;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Consumer;
+
+/**
+ * Instructions per second on the bundled roms, all with the trace off so only decoding and executing is measured
+ * by default the switch core against the table core,
+ * with --debugger the switch core without a debugger, with an unarmed one and with an armed one
+ */
+public class CoreBenchmark {
+
+    private static final String[] BUNDLED_ROMS = { "./invaders.c8", "./pong2.c8", "./tetris.c8" };
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int ROUNDS = 31;
+
+    private static final String[] CORE_NAMES = { "switch", "table" };
+    private static final String[] DEBUGGER_NAMES = { "no debugger", "unarmed", "armed" };
+
+    public static void main(String[] args) {
+        boolean debugger = args.length > 0 && args[0].equals("--debugger");
+        int first = debugger ? 1 : 0;
+        long instructions = args.length > first ? Long.parseLong(args[first]) : 2_000_000;
+
+        String[] names = debugger ? DEBUGGER_NAMES : CORE_NAMES;
+        List<Consumer<Chip>> variants = debugger ? debuggerVariants() : coreVariants();
+        double[][] rates = new double[variants.size()][ROUNDS];
+
+        // short rounds taking turns, so a noisy neighbour hits every variant alike
+        for(int round = -WARMUP_ROUNDS; round < ROUNDS; round++) {
+            for(int v = 0; v < variants.size(); v++) {
+                double perSecond = measure(variants.get(v), instructions);
+                if(round >= 0) rates[v][round] = perSecond;
+            }
+        }
+
+        for(int v = 0; v < variants.size(); v++) {
+            double[] ratio = new double[ROUNDS];
+            for(int round = 0; round < ROUNDS; round++) ratio[round] = rates[v][round] / rates[0][round];
+            System.out.println(String.format("%-12s %7.1f M instructions/s  %.3fx %s (median of %d rounds)",
+                    names[v], median(rates[v]) / 1e6, median(ratio), names[0], ROUNDS));
+        }
+    }
+
+    private static List<Consumer<Chip>> coreVariants() {
+        return Arrays.asList(
+                chip -> chip.setCore(Chip.Core.SWITCH),
+                chip -> chip.setCore(Chip.Core.TABLE));
+    }
+
+    /**
+     * An unarmed debugger must cost the same as none at all,
+     * the armed one has a breakpoint no bundled rom ever reaches so it only pays for the checks
+     */
+    private static List<Consumer<Chip>> debuggerVariants() {
+        return Arrays.asList(
+                chip -> { },
+                chip -> {
+                    Debugger debugger = new Debugger(chip);
+                    debugger.addBreakpoint(0xFFE);
+                    debugger.removeBreakpoint(0xFFE); // armed once, then back to unarmed
+                },
+                chip -> new Debugger(chip).addBreakpoint(0xFFE));
+    }
+
+    private static double median(double[] values) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    /**
+     * Runs every bundled rom for the given number of instructions
+     * @return
+     * instructions per second
+     */
+    private static double measure(Consumer<Chip> variant, long instructions) {
+        int[] keys = new int[16];
+        long executed = 0;
+        long started = System.nanoTime();
+        for(String rom : BUNDLED_ROMS) {
+            Random random = new Random(1);
+            Chip chip = create(variant, rom);
+            for(long i = 0; i < instructions; i++) {
+                if((i & 0xFF) == 0) { // new random keys every 256 instructions
+                    for(int k = 0; k < keys.length; k++) keys[k] = random.nextInt(8) == 0 ? 1 : 0;
+                }
+                chip.setKeyBuffer(keys);
+                try {
+                    chip.run();
+                } catch (RuntimeException e) {
+                    chip = create(variant, rom); // eg invaders overflowing the stack, start over
+                }
+            }
+            executed += instructions;
+        }
+        return executed / ((System.nanoTime() - started) / 1e9);
+    }
+
+    private static Chip create(Consumer<Chip> variant, String rom) {
+        Chip chip = new Chip();
+        variant.accept(chip);
+        chip.init();
+        chip.setTrace(false);
+        chip.setMuted(true);
+        chip.setRandomSeed(1);
+        chip.loadProgram(rom);
+        return chip;
+    }
+}
@@ -0,0 +1,48 @@
+package emu;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("chip8.Frame")
+@Label("Frame")
+@Category({"Chip 8", "Front End"})
+@Description("Instructions executed between two redraws")
+@Enabled(false)
+@StackTrace(false)
+class FrameEvent extends Event {
+
+    @Label("Instructions")
+    long instructions;
+
+    /**
+     * Starts timing the next frame, checked once per frame
+     * only call once FlightRecorder.isInitialized(), touching this class before starts the recorder
+     * @return
+     * the started event, or null when the recording does not want frames
+     */
+    static FrameEvent beginFrame() {
+        FrameEvent event = new FrameEvent();
+        if(!event.isEnabled()) return null;
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Ends a frame started by beginFrame
+     * @param event
+     * may be null
+     */
+    static void endFrame(FrameEvent event, long instructions) {
+        if(event == null) return;
+        event.end();
+        if(event.shouldCommit()) {
+            event.instructions = instructions;
+            event.commit();
+        }
+    }
+}
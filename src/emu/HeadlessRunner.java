@@ -0,0 +1,71 @@
+package emu;
+
+import chip.Chip;
+import chip.UnsupportedOpcodeException;
+import chip.ChipState;
+
+import java.io.IOException;
+import jdk.jfr.FlightRecorder;
+
+/**
+ * Runs the chip without a window, for batch or server use
+ * must not reference any AWT/Swing class
+ */
+public class HeadlessRunner {
+
+    private Chip chip8;
+    private LaunchOptions options;
+
+    public HeadlessRunner(Chip chip8, LaunchOptions options) {
+        this.chip8 = chip8;
+        this.options = options;
+    }
+
+    public void run() {
+        int[] keyBuffer = new int[16]; // nobody presses keys
+        long executed = 0;
+        FrameEvent frameEvent = FlightRecorder.isInitialized() ? FrameEvent.beginFrame() : null;
+        long instructions = 0;
+        while(options.cycles == 0 || executed < options.cycles) {
+            chip8.setKeyBuffer(keyBuffer);
+            boolean ran = false;
+            try {
+                ran = chip8.run();
+            } catch (UnsupportedOpcodeException e) {
+                System.err.println(e.getMessage());
+                System.exit(1);
+            }
+            if(ran) { // a halted chip uses up no cycles
+                if(executed == 0) {
+                    Launcher.reportStartup("headless");
+                }
+                executed++;
+                instructions++;
+            }
+            if(chip8.needsRedraw()) {
+                chip8.removeDrawFlag(); // no one to redraw
+                if(frameEvent != null) FrameEvent.endFrame(frameEvent, instructions);
+                frameEvent = FlightRecorder.isInitialized() ? FrameEvent.beginFrame() : null;
+                instructions = 0;
+            }
+            if(options.speed > 0) {
+                try {
+                    if(FlightRecorder.isInitialized()) OversleepEvent.sleep(options.speed);
+                    else Thread.sleep(options.speed);
+                } catch (InterruptedException e) {
+                    break;
+                }
+            }
+        }
+
+        if(options.saveStateFile != null) {
+            ChipState state = new ChipState();
+            chip8.saveState(state);
+            try {
+                state.save(options.saveStateFile);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
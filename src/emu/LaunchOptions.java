@@ -0,0 +1,148 @@
+package emu;
+
+import chip.Chip;
+
+/**
+ * Command line options of the launcher
+ * kept free of any AWT/Swing types so headless runs never load them
+ */
+public class LaunchOptions {
+
+    public static final String USAGE =
+            "Usage: emu.Launcher [options] [rom]\n" +
+            "  --rom <file>          program to load (default ./invaders.c8)\n" +
+            "  --speed <ms>          sleep between instructions, lower -> faster (default 8)\n" +
+            "  --core <switch|table> interpreter core (default switch)\n" +
+            "  --headless            run without a window, never loads AWT/Swing\n" +
+            "  --state <file>        warm start from a saved state instead of the rom\n" +
+            "  --save-state <file>   write the state on exit (headless)\n" +
+            "  --cycles <n>          stop after n instructions, 0 runs forever (headless)\n" +
+            "  --quiet               discard the instruction trace\n" +
+            "  --latency             measure input to photon latency, reported on exit\n" +
+            "  --mosaic <cols>x<rows> run many instances of the rom in one window\n" +
+            "  --tile-fps <n>        refresh limit of each mosaic tile (default 30)\n" +
+            "  --host <port>         host a two player netplay session\n" +
+            "  --join <host:port>    join a netplay session";
+
+    String rom = "./invaders.c8";
+    int speed = 8;
+    Chip.Core core = Chip.Core.SWITCH;
+    boolean headless;
+    String stateFile;
+    String saveStateFile;
+    long cycles;
+    boolean quiet;
+    boolean latency;
+    int mosaicColumns; // 0 when not showing a mosaic
+    int mosaicRows;
+    int tileFps = 30;
+    int netplayPort; // 0 when not playing over the network
+    String netplayHost; // null when hosting
+
+    /**
+     * @param args
+     * arguments given to main
+     * @return
+     * parsed options
+     * @throws IllegalArgumentException
+     * on unknown or incomplete options
+     */
+    public static LaunchOptions parse(String[] args) {
+        LaunchOptions options = new LaunchOptions();
+        for(int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch(arg) {
+                case "--rom":
+                    options.rom = value(args, ++i, arg);
+                    break;
+                case "--speed":
+                    options.speed = Integer.parseInt(value(args, ++i, arg));
+                    break;
+                case "--core":
+                    options.core = core(value(args, ++i, arg));
+                    break;
+                case "--headless":
+                    options.headless = true;
+                    break;
+                case "--state":
+                    options.stateFile = value(args, ++i, arg);
+                    break;
+                case "--save-state":
+                    options.saveStateFile = value(args, ++i, arg);
+                    break;
+                case "--cycles":
+                    options.cycles = Long.parseLong(value(args, ++i, arg));
+                    break;
+                case "--quiet":
+                    options.quiet = true;
+                    break;
+                case "--latency":
+                    options.latency = true;
+                    break;
+                case "--mosaic": {
+                    String grid = value(args, ++i, arg);
+                    int x = grid.indexOf('x');
+                    if(x < 0) throw new IllegalArgumentException("--mosaic needs <cols>x<rows>");
+                    options.mosaicColumns = Integer.parseInt(grid.substring(0, x));
+                    options.mosaicRows = Integer.parseInt(grid.substring(x + 1));
+                    if(options.mosaicColumns < 1 || options.mosaicRows < 1) {
+                        throw new IllegalArgumentException("--mosaic needs at least 1x1");
+                    }
+                    break;
+                }
+                case "--tile-fps":
+                    options.tileFps = Integer.parseInt(value(args, ++i, arg));
+                    break;
+                case "--host":
+                    options.netplayPort = Integer.parseInt(value(args, ++i, arg));
+                    break;
+                case "--join": {
+                    String address = value(args, ++i, arg);
+                    int colon = address.lastIndexOf(':');
+                    if(colon < 0) throw new IllegalArgumentException("--join needs host:port");
+                    options.netplayHost = address.substring(0, colon);
+                    options.netplayPort = Integer.parseInt(address.substring(colon + 1));
+                    break;
+                }
+                default:
+                    if(arg.startsWith("--")) {
+                        throw new IllegalArgumentException("Unknown option " + arg);
+                    }
+                    options.rom = arg; // plain argument is the rom
+            }
+        }
+        if(options.speed < 0 || options.cycles < 0) {
+            throw new IllegalArgumentException("--speed and --cycles can't be negative");
+        }
+        if(options.mosaicColumns > 0 && options.headless) {
+            throw new IllegalArgumentException("--mosaic needs a window, it can't be combined with --headless");
+        }
+        if(options.mosaicColumns > 0 && options.isNetplay()) {
+            throw new IllegalArgumentException("--mosaic can't be combined with --host or --join");
+        }
+        return options;
+    }
+
+    boolean isNetplay() {
+        return netplayPort != 0;
+    }
+
+    /**
+     * @param name
+     * core as written on the command line
+     */
+    static Chip.Core core(String name) {
+        switch(name) {
+            case "switch": return Chip.Core.SWITCH;
+            case "table": return Chip.Core.TABLE;
+            default: throw new IllegalArgumentException("Unknown core " + name);
+        }
+    }
+
+    private static String value(String[] args, int i, String option) {
+        if(i >= args.length) {
+            throw new IllegalArgumentException(option + " needs a value");
+        }
+        return args[i];
+    }
+}
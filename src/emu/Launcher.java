@@ -0,0 +1,109 @@
+package emu;
+
+import chip.Chip;
+import chip.ChipState;
+import chip.InputLatency;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Entry point, picks the window or headless mode from the command line
+ * nothing in here may reference AWT/Swing, the window classes are only loaded through Main
+ */
+public class Launcher {
+
+    private static long launchNanos; // when main was entered
+    private static boolean startupReported;
+
+    public static void main(String[] args) {
+        launchNanos = System.nanoTime();
+        LaunchOptions options;
+        try {
+            options = LaunchOptions.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(LaunchOptions.USAGE);
+            System.exit(1);
+            return;
+        }
+
+        if(options.mosaicColumns > 0) {
+            new MosaicRunner(options).start();
+            return;
+        }
+
+        Chip chip = createChip(options);
+        if(options.isNetplay()) {
+            startNetplay(chip, options);
+        } else if(options.headless) {
+            new HeadlessRunner(chip, options).run();
+        } else {
+            new Main(chip, options).start();
+        }
+    }
+
+    private static void startNetplay(Chip chip, LaunchOptions options) {
+        NetplaySession session;
+        try {
+            if(options.netplayHost == null) {
+                session = NetplaySession.host(chip, options.netplayPort, NetplayRunner.instructionsPerFrame(options.speed),
+                        NetplayRunner.FRAME_NANOS, options);
+            } else {
+                session = NetplaySession.join(chip, options.netplayHost, options.netplayPort, options);
+            }
+        } catch (IOException e) {
+            System.err.println("Netplay: " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        ChipView view = options.headless ? null : Main.createView(chip);
+        new NetplayRunner(chip, session, view, options).start();
+    }
+
+    /**
+     * Builds the chip either from the rom or from a saved state
+     */
+    static Chip createChip(LaunchOptions options) {
+        Chip chip = new Chip();
+        chip.setCore(options.core);
+        chip.init();
+        if(options.stateFile != null) {
+            ChipState state = new ChipState();
+            try {
+                state.load(options.stateFile);
+            } catch (IOException e) {
+                System.err.println(e.getMessage());
+                System.exit(1);
+            }
+            chip.loadState(state);
+            chip.publishFrame(); // the saved screen, before the first redraw
+        } else {
+            chip.loadProgram(options.rom);
+        }
+        chip.setMuted(options.headless);
+        chip.setTrace(!options.quiet);
+        if(options.latency) {
+            InputLatency latency = new InputLatency();
+            chip.setInputLatency(latency);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> System.err.print(latency.report())));
+        }
+        return chip;
+    }
+
+    /**
+     * Called by the runners once the first instruction has been executed
+     * reports how long it took from JVM start and from entering main
+     */
+    static void reportStartup(String mode) {
+        if(startupReported) return;
+        startupReported = true;
+        long now = System.nanoTime();
+        long wallClock = System.currentTimeMillis();
+        double sinceMain = (now - launchNanos) / 1_000_000.0;
+        // only asked for after the first instruction so it does not add to the measurement
+        long sinceJvm = wallClock - ManagementFactory.getRuntimeMXBean().getStartTime();
+        System.err.println(String.format("Startup (%s): first instruction after %.1f ms in launcher, %d ms since JVM start",
+                mode, sinceMain, sinceJvm));
+    }
+}
@@ -0,0 +1,288 @@
+package emu;
+
+import chip.Chip;
+import chip.ChipState;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * Runs a reference and a candidate core in lockstep on the same rom and inputs
+ * every interval instructions the rolling state hashes are compared
+ * on a mismatch it bisects to the first diverging instruction and dumps both states
+ */
+public class LockstepVerifier {
+
+    private static final String USAGE =
+            "Usage: emu.LockstepVerifier [options] [rom...]\n" +
+            "  --reference <core>      core to trust (default switch)\n" +
+            "  --candidate <core>      core to check (default table)\n" +
+            "  --instructions <n>      instructions per run (default 10000000)\n" +
+            "  --interval <n>          instructions between hash checks (default 1000)\n" +
+            "  --seeds <n>             random input/seed runs per rom (default 4)\n" +
+            "  --threads <n>           worker threads (default all processors)\n" +
+            "  cores: switch, table\n" +
+            "  exit status 1 if the cores disagree, 2 if they agree but a run ended early on a fault";
+
+    private static final String[] BUNDLED_ROMS = { "./invaders.c8", "./pong2.c8", "./tetris.c8" };
+    private static final int KEY_HOLD = 256; // instructions a random key state is held for
+
+    private final Supplier<Chip> reference;
+    private final Supplier<Chip> candidate;
+    private final long instructions;
+    private final int interval;
+
+    public LockstepVerifier(Supplier<Chip> reference, Supplier<Chip> candidate, long instructions, int interval) {
+        this.reference = reference;
+        this.candidate = candidate;
+        this.instructions = instructions;
+        this.interval = interval;
+    }
+
+    /**
+     * @param name
+     * name of the core as given on the command line
+     * @return
+     * factory for fresh chips running that core
+     */
+    static Supplier<Chip> core(String name) {
+        Chip.Core core = LaunchOptions.core(name);
+        return () -> {
+            Chip chip = new Chip();
+            chip.setCore(core);
+            return chip;
+        };
+    }
+
+    /**
+     * Outcome of one run
+     */
+    public static class Result {
+        public final boolean agreed;
+        public final boolean faulted; // ended early because a core threw
+        public final long executed; // instructions each core actually ran
+        public final String report; // divergence, or why the run ended early
+
+        Result(boolean agreed, boolean faulted, long executed, String report) {
+            this.agreed = agreed;
+            this.faulted = faulted;
+            this.executed = executed;
+            this.report = report;
+        }
+    }
+
+    /**
+     * Runs both cores on one rom
+     * @return
+     * if they agreed on every instruction and how many ran, with a report of the divergence if not
+     */
+    public Result verify(String rom, int seed) {
+        Chip a = createChip(reference, rom, seed);
+        Chip b = createChip(candidate, rom, seed);
+        ChipState goodA = new ChipState(), goodB = new ChipState();
+        ChipState currentA = new ChipState(), currentB = new ChipState();
+        a.saveState(goodA);
+        b.saveState(goodB);
+        if(!goodA.sameAs(goodB)) {
+            return new Result(false, false, 0, "States differ before the first instruction\n" + goodA.diff(goodB));
+        }
+
+        int[] keys = new int[16];
+        long rollingA = 0, rollingB = 0;
+        long done = 0;
+        while(done < instructions) {
+            int n = (int) Math.min(interval, instructions - done);
+            for(int i = 0; i < n; i++) {
+                long index = done + i;
+                if(i == 0 || index % KEY_HOLD == 0) randomKeys(seed, index, keys);
+                RuntimeException faultA = null, faultB = null;
+                a.setKeyBuffer(keys);
+                try { a.run(); } catch (RuntimeException e) { faultA = e; }
+                b.setKeyBuffer(keys);
+                try { b.run(); } catch (RuntimeException e) { faultB = e; }
+                if(faultA != null || faultB != null) {
+                    return compareFaults(a, b, faultA, faultB, index);
+                }
+            }
+            a.saveState(currentA);
+            b.saveState(currentB);
+            rollingA = rollingA * 0x9E3779B97F4A7C15L + currentA.hash();
+            rollingB = rollingB * 0x9E3779B97F4A7C15L + currentB.hash();
+            if(rollingA != rollingB) {
+                return new Result(false, false, done + n, bisect(a, b, goodA, goodB, done, n, seed));
+            }
+            // the checked states become the last known good ones
+            ChipState swap = goodA; goodA = currentA; currentA = swap;
+            swap = goodB; goodB = currentB; currentB = swap;
+            done += n;
+        }
+        return new Result(true, false, done, null);
+    }
+
+    /**
+     * A core threw while executing an instruction
+     * the same fault in both cores is what the reference does, so it still counts as agreement
+     * but the run is marked as faulted so it is not mistaken for a full run
+     */
+    private Result compareFaults(Chip a, Chip b, RuntimeException faultA, RuntimeException faultB, long index) {
+        ChipState stateA = new ChipState(), stateB = new ChipState();
+        a.saveState(stateA);
+        b.saveState(stateB);
+        if(faultA != null && faultB != null && faultA.getClass() == faultB.getClass() && stateA.sameAs(stateB)) {
+            return new Result(true, true, index + 1, "Both cores faulted at instruction " + index + ": " + faultA + "\n" + stateA.dump());
+        }
+        return new Result(false, true, index + 1, "Fault at instruction " + index + "\n"
+                + "Reference: " + (faultA == null ? "no fault" : faultA.toString()) + "\n" + stateA.dump()
+                + "Candidate: " + (faultB == null ? "no fault" : faultB.toString()) + "\n" + stateB.dump());
+    }
+
+    /**
+     * Both cores agreed after start instructions and disagree after start + n
+     * replay from the good snapshots to find the first instruction they disagree on
+     */
+    private String bisect(Chip a, Chip b, ChipState goodA, ChipState goodB, long start, int n, int seed) {
+        ChipState stateA = new ChipState(), stateB = new ChipState();
+        int lo = 0; // steps after which both still agree
+        int hi = n; // steps after which they disagree
+        while(hi - lo > 1) {
+            int mid = (lo + hi) >>> 1;
+            replay(a, b, goodA, goodB, start, mid, seed);
+            a.saveState(stateA);
+            b.saveState(stateB);
+            if(stateA.sameAs(stateB)) lo = mid;
+            else hi = mid;
+        }
+
+        replay(a, b, goodA, goodB, start, lo, seed);
+        a.saveState(stateA);
+        StringBuilder report = new StringBuilder();
+        report.append("Diverged at instruction ").append(start + lo).append('\n');
+        report.append("Before:\n").append(stateA.dump());
+        replay(a, b, goodA, goodB, start, lo + 1, seed);
+        a.saveState(stateA);
+        b.saveState(stateB);
+        report.append("Reference after:\n").append(stateA.dump());
+        report.append("Candidate after:\n").append(stateB.dump());
+        report.append(stateA.diff(stateB));
+        return report.toString();
+    }
+
+    private void replay(Chip a, Chip b, ChipState goodA, ChipState goodB, long start, int steps, int seed) {
+        a.loadState(goodA);
+        b.loadState(goodB);
+        int[] keys = new int[16];
+        for(int i = 0; i < steps; i++) {
+            long index = start + i;
+            if(i == 0 || index % KEY_HOLD == 0) randomKeys(seed, index, keys);
+            a.setKeyBuffer(keys);
+            a.run();
+            b.setKeyBuffer(keys);
+            b.run();
+        }
+    }
+
+    private static Chip createChip(Supplier<Chip> core, String rom, int seed) {
+        Chip chip = core.get();
+        chip.init();
+        chip.setTrace(false);
+        chip.setMuted(true);
+        chip.setRandomSeed(seed);
+        chip.loadProgram(rom);
+        return chip;
+    }
+
+    /**
+     * Key state is a pure function of seed and instruction index so any stretch can be replayed
+     */
+    private static void randomKeys(int seed, long index, int[] keys) {
+        long r = seed * 0x9E3779B97F4A7C15L + (index / KEY_HOLD);
+        // splitmix64 finaliser
+        r = (r ^ (r >>> 30)) * 0xBF58476D1CE4E5B9L;
+        r = (r ^ (r >>> 27)) * 0x94D049BB133111EBL;
+        r ^= r >>> 31;
+        for(int i = 0; i < keys.length; i++) {
+            keys[i] = ((r >>> (i * 4)) & 0x7) == 0 ? 1 : 0; // each key down about 1 in 8
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        String referenceName = "switch";
+        String candidateName = "table";
+        long instructions = 10_000_000;
+        int interval = 1000;
+        int seeds = 4;
+        int threads = Runtime.getRuntime().availableProcessors();
+        List<String> roms = new ArrayList<>();
+        try {
+            for(int i = 0; i < args.length; i++) {
+                switch(args[i]) {
+                    case "--reference": referenceName = args[++i]; break;
+                    case "--candidate": candidateName = args[++i]; break;
+                    case "--instructions": instructions = Long.parseLong(args[++i]); break;
+                    case "--interval": interval = Integer.parseInt(args[++i]); break;
+                    case "--seeds": seeds = Integer.parseInt(args[++i]); break;
+                    case "--threads": threads = Integer.parseInt(args[++i]); break;
+                    default:
+                        if(args[i].startsWith("--")) throw new IllegalArgumentException("Unknown option " + args[i]);
+                        roms.add(args[i]);
+                }
+            }
+            if(interval < 1 || seeds < 1 || threads < 1) throw new IllegalArgumentException("Counts must be positive");
+        } catch (RuntimeException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(1);
+            return;
+        }
+        if(roms.isEmpty()) {
+            for(String rom : BUNDLED_ROMS) roms.add(rom);
+        }
+
+        LockstepVerifier verifier = new LockstepVerifier(core(referenceName), core(candidateName), instructions, interval);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<String> names = new ArrayList<>();
+        List<Future<Result>> results = new ArrayList<>();
+        long started = System.nanoTime();
+        for(String rom : roms) {
+            for(int seed = 1; seed <= seeds; seed++) {
+                final int runSeed = seed;
+                names.add(rom + " seed " + seed);
+                results.add(pool.submit(() -> verifier.verify(rom, runSeed)));
+            }
+        }
+
+        int failures = 0;
+        int faulted = 0;
+        long total = 0; // instructions per core that actually ran
+        for(int i = 0; i < results.size(); i++) {
+            Result result;
+            try {
+                result = results.get(i).get();
+            } catch (ExecutionException e) {
+                result = new Result(false, false, 0, "Crashed: " + e.getCause());
+            }
+            total += result.executed;
+            if(result.faulted) faulted++;
+            if(result.agreed && result.faulted) {
+                System.out.println("FAULTED  " + names.get(i) + " (same fault in both cores after " + result.executed + " instructions)");
+            } else if(result.agreed) {
+                System.out.println("OK       " + names.get(i));
+            } else {
+                failures++;
+                System.out.println("MISMATCH " + names.get(i));
+            }
+            if(result.report != null) System.out.println(result.report);
+        }
+        pool.shutdown();
+
+        double seconds = (System.nanoTime() - started) / 1e9;
+        System.out.println(String.format("%s vs %s: %d runs, %d ended early on a fault, %d instructions per core in %.1f s (%.1f M/s per core)",
+                referenceName, candidateName, results.size(), faulted, total, seconds, total / seconds / 1e6));
+        System.exit(failures > 0 ? 1 : faulted > 0 ? 2 : 0);
+    }
+}
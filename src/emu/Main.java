@@ -1,40 +1,69 @@
 package emu;
 
 import chip.Chip;
+import chip.UnsupportedOpcodeException;
+
+import jdk.jfr.FlightRecorder;
 
 public class Main extends Thread {
 
     private Chip chip8;
     private ChipFrame frame;
+    private int speed;
 
-    public Main() {
-        chip8 = new Chip();
-        chip8.init();
-//        chip8.loadProgram("./pong2.c8");
-        chip8.loadProgram("./invaders.c8");
+    public Main(Chip chip8, LaunchOptions options) {
+        this.chip8 = chip8;
+        this.speed = options.speed;
         frame = new ChipFrame(chip8);
     }
 
     public void run() {
         // basic loop of a thread
         // 60 Hz, 60 updates per second
+        boolean first = true;
+        FrameEvent frameEvent = FlightRecorder.isInitialized() ? FrameEvent.beginFrame() : null; // one redraw to the next, for the flight recorder
+        long instructions = 0;
         while(true) {
             chip8.setKeyBuffer(frame.getKeyBuffer()); // send keys
-            chip8.run();
+            try {
+                if(chip8.run()) instructions++; // not while the debugger has it halted
+            } catch (UnsupportedOpcodeException e) {
+                System.err.println(e.getMessage());
+                System.exit(1);
+            }
+            if(first) {
+                Launcher.reportStartup("window");
+                first = false;
+            }
             if(chip8.needsRedraw()) {
+                chip8.publishFrame();
                 frame.repaint();
                 chip8.removeDrawFlag();
+                if(frameEvent != null) FrameEvent.endFrame(frameEvent, instructions);
+                frameEvent = FlightRecorder.isInitialized() ? FrameEvent.beginFrame() : null;
+                instructions = 0;
             }
             try {
-                Thread.sleep(8); // speed of application, lower -> faster
+                // speed of application, lower -> faster
+                if(FlightRecorder.isInitialized()) OversleepEvent.sleep(speed);
+                else Thread.sleep(speed);
             } catch (InterruptedException e) {
 
             }
         }
     }
 
+    /**
+     * Opens the window for runners that only know about ChipView
+     */
+    static ChipView createView(Chip chip8) {
+        return new ChipFrame(chip8);
+    }
+
+    /**
+     * Kept for existing run configurations, see Launcher for the options
+     */
     public static void main(String[] args) {
-        Main main = new Main();
-        main.start();
+        Launcher.main(args);
     }
 }
@@ -0,0 +1,142 @@
+package emu;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import chip.Chip;
+
+/**
+ * Grid of many chip displays in one component
+ * all tiles share a single backing image, only tiles whose chip signalled a redraw are copied
+ * and each tile is refreshed at most tileFps times a second
+ */
+public class MosaicPanel extends JPanel {
+
+    private static final long serialVersionUID = 1L;
+    private static final int TILE_WIDTH = 64;
+    private static final int TILE_HEIGHT = 32;
+    private static final int GAP = 1; // dark line between tiles
+    private static final int BLACK = 0x000000;
+    private static final int WHITE = 0xFFFFFF;
+    private static final int GAP_COLOR = 0x404040;
+
+    private Chip[] chips;
+    private int columns;
+    private int scale;
+
+    /**
+     * backing image, written directly through its pixel array
+     * one int per pixel, tiles at (column * (64 + GAP), row * (32 + GAP))
+     */
+    private BufferedImage image;
+    private int[] pixels;
+    private int stride;
+
+    private AtomicIntegerArray redraw; // set by the emulation thread, cleared on the EDT
+    private boolean[] faulted; // only touched on the EDT
+    private long[] lastUpdate; // per tile, nanoTime of the last copy
+    private long minTileInterval;
+    private Timer timer;
+
+    public MosaicPanel(Chip[] chips, int columns, int scale, int tileFps) {
+        this.chips = chips;
+        this.columns = columns;
+        this.scale = scale;
+        int rows = (chips.length + columns - 1) / columns;
+        stride = columns * (TILE_WIDTH + GAP) - GAP;
+        image = new BufferedImage(stride, rows * (TILE_HEIGHT + GAP) - GAP, BufferedImage.TYPE_INT_RGB);
+        pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        Arrays.fill(pixels, GAP_COLOR);
+        for(int tile = 0; tile < chips.length; tile++) {
+            fillTile(tile, BLACK);
+        }
+
+        redraw = new AtomicIntegerArray(chips.length);
+        faulted = new boolean[chips.length];
+        lastUpdate = new long[chips.length];
+        minTileInterval = 1_000_000_000L / Math.max(1, tileFps);
+        setPreferredSize(new Dimension(image.getWidth() * scale, image.getHeight() * scale));
+        setOpaque(true);
+        timer = new Timer(1000 / 60, e -> refresh()); // 60 fps on the EDT
+    }
+
+    public void start() {
+        timer.start();
+    }
+
+    public void stop() {
+        timer.stop();
+    }
+
+    /**
+     * The chip of this tile needs a redraw, safe to call from any thread
+     */
+    public void signalRedraw(int tile) {
+        redraw.set(tile, 1);
+    }
+
+    /**
+     * Shows a tile as stopped, eg after its chip faulted
+     */
+    public void markFaulted(int tile) {
+        SwingUtilities.invokeLater(() -> {
+            faulted[tile] = true;
+            redraw.set(tile, 0); // a frame signalled before the fault must not paint over it
+            fillTile(tile, 0x800000);
+            repaintTile(tile);
+        });
+    }
+
+    /**
+     * Copies the tiles that changed and are due, then repaints only those
+     */
+    void refresh() {
+        long now = System.nanoTime();
+        for(int tile = 0; tile < chips.length; tile++) {
+            if(faulted[tile] || redraw.get(tile) == 0 || now - lastUpdate[tile] < minTileInterval) continue;
+            redraw.set(tile, 0);
+            lastUpdate[tile] = now;
+            copyTile(tile, chips[tile].getFrameBuffer().acquire());
+            repaintTile(tile);
+        }
+    }
+
+    private void copyTile(int tile, byte[] display) {
+        int offset = tileOffset(tile);
+        for(int y = 0; y < TILE_HEIGHT; y++) {
+            int row = offset + y * stride;
+            int line = y * TILE_WIDTH;
+            for(int x = 0; x < TILE_WIDTH; x++) {
+                pixels[row + x] = display[line + x] == 0 ? BLACK : WHITE;
+            }
+        }
+    }
+
+    private void fillTile(int tile, int color) {
+        int offset = tileOffset(tile);
+        for(int y = 0; y < TILE_HEIGHT; y++) {
+            Arrays.fill(pixels, offset + y * stride, offset + y * stride + TILE_WIDTH, color);
+        }
+    }
+
+    private int tileOffset(int tile) {
+        int x = (tile % columns) * (TILE_WIDTH + GAP);
+        int y = (tile / columns) * (TILE_HEIGHT + GAP);
+        return y * stride + x;
+    }
+
+    private void repaintTile(int tile) {
+        int x = (tile % columns) * (TILE_WIDTH + GAP) * scale;
+        int y = (tile / columns) * (TILE_HEIGHT + GAP) * scale;
+        repaint(x, y, TILE_WIDTH * scale, TILE_HEIGHT * scale);
+    }
+
+    protected void paintComponent(Graphics g) {
+        // one scaled blit, Java2D only touches the clip of the dirty tiles
+        g.drawImage(image, 0, 0, image.getWidth() * scale, image.getHeight() * scale, null);
+    }
+}
@@ -0,0 +1,75 @@
+package emu;
+
+import chip.Chip;
+
+import javax.swing.*;
+import jdk.jfr.FlightRecorder;
+
+/**
+ * Runs many chips at once and shows them all in one MosaicPanel
+ */
+public class MosaicRunner extends Thread {
+
+    private Chip[] chips;
+    private boolean[] faulted;
+    private MosaicPanel panel;
+    private int speed;
+
+    public MosaicRunner(LaunchOptions options) {
+        int count = options.mosaicColumns * options.mosaicRows;
+        chips = new Chip[count];
+        faulted = new boolean[count];
+        for(int i = 0; i < count; i++) {
+            chips[i] = Launcher.createChip(options);
+            chips[i].setTrace(false); // a hundred traces are of no use to anyone
+            chips[i].setMuted(true);
+            chips[i].setRandomSeed(i + 1); // so the instances do not all play the same game
+        }
+        speed = options.speed;
+
+        int scale = Math.max(1, 1280 / (options.mosaicColumns * 65)); // fit about 1280 pixels wide
+        panel = new MosaicPanel(chips, options.mosaicColumns, scale, options.tileFps);
+        JFrame frame = new JFrame("Chip 8 Emulator - " + count + " instances");
+        frame.setDefaultCloseOperation(WindowConstants.EXIT_ON_CLOSE);
+        frame.add(panel);
+        frame.pack();
+        frame.setVisible(true);
+        panel.start();
+    }
+
+    public void run() {
+        int[] keyBuffer = new int[16];
+        boolean first = true;
+        while(true) {
+            for(int i = 0; i < chips.length; i++) {
+                if(faulted[i]) continue;
+                Chip chip = chips[i];
+                chip.setKeyBuffer(keyBuffer);
+                try {
+                    chip.run();
+                } catch (RuntimeException e) {
+                    // one broken instance must not stop the others
+                    faulted[i] = true;
+                    panel.markFaulted(i);
+                    System.err.println("Instance " + i + " stopped: " + e);
+                    continue;
+                }
+                if(chip.needsRedraw()) {
+                    chip.publishFrame();
+                    panel.signalRedraw(i);
+                    chip.removeDrawFlag();
+                }
+            }
+            if(first) {
+                Launcher.reportStartup("mosaic");
+                first = false;
+            }
+            try {
+                if(FlightRecorder.isInitialized()) OversleepEvent.sleep(speed);
+                else Thread.sleep(speed);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package emu;
+
+import chip.Chip;
+import chip.UnsupportedOpcodeException;
+
+import java.util.Random;
+import jdk.jfr.FlightRecorder;
+
+/**
+ * Paces a netplay session at a fixed frame rate
+ * with a window the local keys come from ChipFrame, headless peers press random keys
+ * must not reference any AWT/Swing class
+ */
+public class NetplayRunner extends Thread {
+
+    private Chip chip8;
+    private NetplaySession session;
+    private ChipView view; // null when headless
+    /**
+     * the host's frame period, sent to the joiner in the handshake
+     * 60 Hz like the chip 8 timers, --speed only sets how many instructions fit in a frame
+     */
+    static final long FRAME_NANOS = 1_000_000_000L / 60;
+
+    private long frames; // 0 runs until the other player leaves
+
+    public NetplayRunner(Chip chip8, NetplaySession session, ChipView view, LaunchOptions options) {
+        this.chip8 = chip8;
+        this.session = session;
+        this.view = view;
+        int instructionsPerFrame = session.getInstructionsPerFrame();
+        this.frames = options.cycles / instructionsPerFrame;
+    }
+
+    /**
+     * Sleep between instructions given in ms -> instructions in a 60 Hz frame
+     */
+    static int instructionsPerFrame(int speed) {
+        if(speed <= 0) return 2;
+        return Math.max(1, Math.round(1000f / 60 / speed));
+    }
+
+    public void run() {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> System.err.println(session.report())));
+        Random random = new Random(session.getPlayer());
+        int scriptedKeys = 0;
+        long period = session.getFrameNanos();
+        long next = System.nanoTime();
+        while(!session.isDisconnected() && (frames == 0 || session.getFrame() < frames)) {
+            int keys;
+            if(view != null) {
+                keys = keyMask(view.getKeyBuffer());
+            } else {
+                // headless peers change keys every few frames to force mispredictions
+                if(random.nextInt(20) == 0) scriptedKeys = random.nextInt(4) == 0 ? 0 : 1 << random.nextInt(16);
+                keys = scriptedKeys;
+            }
+            boolean advanced;
+            try {
+                advanced = session.tick(keys);
+            } catch (UnsupportedOpcodeException e) {
+                System.err.println(e.getMessage());
+                session.close();
+                System.exit(1);
+                return;
+            }
+            if(advanced && session.getFrame() == 1) {
+                Launcher.reportStartup("netplay");
+            }
+            if(view != null) {
+                // once per tick even without a redraw, a rollback may have changed the screen without drawing
+                chip8.publishFrame();
+                view.repaint();
+            }
+            chip8.removeDrawFlag();
+
+            next += period;
+            if(session.shouldSlowDown()) {
+                next += period / 4; // ahead of the other player, let it catch up a quarter frame at a time
+            }
+            long sleep = next - System.nanoTime();
+            if(sleep > 0) {
+                try {
+                    if(FlightRecorder.isInitialized()) OversleepEvent.sleepNanos(sleep);
+                    else Thread.sleep(sleep / 1_000_000, (int) (sleep % 1_000_000));
+                } catch (InterruptedException e) {
+                    break;
+                }
+            }
+        }
+        session.close();
+        if(session.isDesynced()) System.exit(1);
+    }
+
+    private static int keyMask(int[] keyBuffer) {
+        int keys = 0;
+        for(int i = 0; i < keyBuffer.length; i++) {
+            if(keyBuffer[i] != 0) keys |= 1 << i;
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,403 @@
+package emu;
+
+import chip.Chip;
+import chip.ChipState;
+import chip.InputLatency;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Two player session with rollback
+ * local input is applied immediately, the remote input is predicted to stay the same
+ * when the real remote input arrives and differs, the chip is rolled back to the snapshot
+ * of that frame and re-simulated up to the present
+ * must not reference any AWT/Swing class
+ */
+public class NetplaySession {
+
+    private static final int MAGIC = 0xC8CA; // 0xC8C8 peers sent no message types, 0xC8C9 no frame period
+    static final int MAX_ROLLBACK = 16; // frames we may run ahead of the last confirmed remote input
+    private static final int RING = 2 * (MAX_ROLLBACK + 1); // history kept per frame
+    static final int HASH_INTERVAL = 60; // frames between state hash checks, once a second
+    private static final int HASHES = 8; // hash checks kept waiting for the other side
+
+    // message types after the handshake
+    private static final int INPUT = 0; // int frame, short keys, byte frame advantage
+    private static final int HASH = 1; // int frame, long hash of the state before that frame
+
+    private final Chip chip;
+    private final Socket socket;
+    private final DataOutputStream output;
+    private final int player; // 1 hosts, 2 joins
+    private final int instructionsPerFrame;
+    private final long frameNanos; // real time length of a frame, the host's for both players
+    private final boolean trace; // restored after re-simulation
+    private final boolean muted;
+
+    /**
+     * per frame history, indexed by frame % RING
+     * states[slot] is the chip before that frame was simulated
+     */
+    private final ChipState[] states = new ChipState[RING];
+    private final int[] localInputs = new int[RING];
+    private final int[] remoteInputs = new int[RING];
+    private final int[] remoteFrames = new int[RING]; // frame the remote input in the slot was confirmed for, -1 if predicted
+    private final int[] keyBuffer = new int[16];
+
+    private final ConcurrentLinkedQueue<long[]> incoming = new ConcurrentLinkedQueue<>(); // frame, keys, advantage
+    private final ConcurrentLinkedQueue<long[]> incomingHashes = new ConcurrentLinkedQueue<>(); // frame, hash
+    private volatile boolean disconnected;
+
+    /**
+     * confirmed state hashes by check, indexed by (frame / HASH_INTERVAL) % HASHES
+     * -1 frames mark an empty slot
+     */
+    private final int[] localHashFrames = new int[HASHES];
+    private final long[] localHashes = new long[HASHES];
+    private final int[] remoteHashFrames = new int[HASHES];
+    private final long[] remoteHashes = new long[HASHES];
+    private int nextHashFrame = HASH_INTERVAL; // next frame whose confirmed state is hashed
+    private int desyncFrame = -1;
+
+    private int frame; // next frame to simulate
+    private int confirmedFrame = -1; // newest frame the remote input is known for
+    private int lastRemote; // newest remote input, used as the prediction
+    private int remoteAdvantage; // how far the other side was ahead of our inputs, as it last told us
+    private double frameAdvantage; // smoothed, positive if we run ahead of the other side
+
+    // statistics
+    private long rollbacks;
+    private long rolledBackFrames;
+    private int maxRollback;
+    private long resimulationNanos;
+    private long remoteInputCount;
+    private long remoteLateFrames;
+    private long stalls;
+    private long slowedFrames;
+    private long hashChecks;
+
+    private NetplaySession(Chip chip, Socket socket, int player, int instructionsPerFrame, long frameNanos, boolean trace, boolean muted) throws IOException {
+        this.chip = chip;
+        this.socket = socket;
+        this.player = player;
+        this.instructionsPerFrame = instructionsPerFrame;
+        this.frameNanos = frameNanos;
+        this.trace = trace;
+        this.muted = muted;
+        socket.setTcpNoDelay(true); // inputs are tiny and late ones cost rollbacks
+        output = new DataOutputStream(socket.getOutputStream());
+        for(int i = 0; i < RING; i++) {
+            states[i] = new ChipState();
+            remoteFrames[i] = -1;
+        }
+        for(int i = 0; i < HASHES; i++) {
+            localHashFrames[i] = -1;
+            remoteHashFrames[i] = -1;
+        }
+    }
+
+    /**
+     * Waits for the second player and tells them the seed, frame length and frame period
+     * both sides must tick at the same rate, the joiner's own --speed does not matter
+     */
+    public static NetplaySession host(Chip chip, int port, int instructionsPerFrame, long frameNanos, LaunchOptions options) throws IOException {
+        Socket socket;
+        try (ServerSocket server = new ServerSocket(port)) {
+            System.err.println("Netplay: waiting for player 2 on port " + port);
+            socket = server.accept();
+        }
+        NetplaySession session = new NetplaySession(chip, socket, 1, instructionsPerFrame, frameNanos, !options.quiet, options.headless);
+        int seed = new Random().nextInt();
+        session.output.writeInt(MAGIC);
+        session.output.writeInt(seed);
+        session.output.writeInt(instructionsPerFrame);
+        session.output.writeLong(frameNanos);
+        session.output.flush();
+        session.handshake(seed, new DataInputStream(socket.getInputStream()));
+        return session;
+    }
+
+    /**
+     * Connects to the host, retrying for a while so both processes can be started together
+     */
+    public static NetplaySession join(Chip chip, String host, int port, LaunchOptions options) throws IOException {
+        Socket socket = null;
+        for(int attempt = 0; socket == null; attempt++) {
+            try {
+                socket = new Socket(host, port);
+            } catch (ConnectException e) {
+                if(attempt == 50) throw e;
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException ex) {
+                    throw e;
+                }
+            }
+        }
+        DataInputStream input = new DataInputStream(socket.getInputStream());
+        if(input.readInt() != MAGIC) {
+            socket.close();
+            throw new IOException("Not a chip 8 netplay host");
+        }
+        int seed = input.readInt();
+        int instructionsPerFrame = input.readInt();
+        long frameNanos = input.readLong();
+        NetplaySession session = new NetplaySession(chip, socket, 2, instructionsPerFrame, frameNanos, !options.quiet, options.headless);
+        session.handshake(seed, input);
+        return session;
+    }
+
+    /**
+     * Both sides seed CXNN the same way and check they start from the same state
+     */
+    private void handshake(int seed, DataInputStream input) throws IOException {
+        chip.setRandomSeed(seed);
+        ChipState state = new ChipState();
+        chip.saveState(state);
+        output.writeLong(state.hash());
+        output.flush();
+        if(input.readLong() != state.hash()) {
+            socket.close();
+            throw new IOException("Players loaded different programs or states");
+        }
+        System.err.println("Netplay: connected as player " + player);
+
+        Thread reader = new Thread(() -> {
+            try {
+                while(true) {
+                    int type = input.readUnsignedByte();
+                    int remoteFrame = input.readInt();
+                    if(type == HASH) {
+                        incomingHashes.add(new long[] { remoteFrame, input.readLong() });
+                    } else {
+                        int keys = input.readUnsignedShort();
+                        int advantage = input.readByte();
+                        incoming.add(new long[] { remoteFrame, keys, advantage });
+                    }
+                }
+            } catch (IOException e) {
+                disconnected = true;
+            }
+        }, "netplay-reader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * Advances the session by one frame
+     * @param localKeys
+     * bit n set if key n is held by the local player
+     * @return
+     * false if the frame could not be simulated because the remote player is too far behind
+     */
+    public boolean tick(int localKeys) {
+        receive();
+        if(frame - confirmedFrame > MAX_ROLLBACK) {
+            stalls++; // the oldest snapshot we could roll back to would be overwritten
+            return false;
+        }
+
+        int slot = frame % RING;
+        localInputs[slot] = localKeys;
+        // how many frames we are ahead of the newest remote input, the other side does the same
+        // half the difference is how far we lead, each side measures the same latency so it cancels out
+        int localAdvantage = frame - confirmedFrame - 1;
+        frameAdvantage += ((localAdvantage - remoteAdvantage) / 2.0 - frameAdvantage) / 8;
+        try {
+            output.writeByte(INPUT);
+            output.writeInt(frame);
+            output.writeShort(localKeys);
+            output.writeByte(Math.max(-128, Math.min(127, localAdvantage)));
+            output.flush();
+        } catch (IOException e) {
+            disconnected = true;
+            return false;
+        }
+        if(remoteFrames[slot] != frame) {
+            remoteInputs[slot] = lastRemote; // predict
+        }
+        chip.saveState(states[slot]);
+        simulate(slot);
+        frame++;
+        sendConfirmedHash();
+        return true;
+    }
+
+    /**
+     * Asked by the runner once per frame
+     * @return
+     * true if we run ahead of the other side and should stretch this frame a little
+     */
+    public boolean shouldSlowDown() {
+        if(frameAdvantage < 0.25) return false;
+        slowedFrames++;
+        return true;
+    }
+
+    /**
+     * Once every input before a check frame is known its snapshot can no longer be rolled back,
+     * both sides hash it and compare, a difference means the simulations diverged
+     */
+    private void sendConfirmedHash() {
+        if(nextHashFrame >= frame || confirmedFrame < nextHashFrame - 1) return;
+        int check = nextHashFrame;
+        nextHashFrame += HASH_INTERVAL;
+        long hash = states[check % RING].hash();
+        int slot = (check / HASH_INTERVAL) % HASHES;
+        localHashFrames[slot] = check;
+        localHashes[slot] = hash;
+        try {
+            output.writeByte(HASH);
+            output.writeInt(check);
+            output.writeLong(hash);
+            output.flush();
+        } catch (IOException e) {
+            disconnected = true;
+            return;
+        }
+        compareHashes(slot);
+    }
+
+    private void compareHashes(int slot) {
+        if(localHashFrames[slot] < 0 || localHashFrames[slot] != remoteHashFrames[slot]) return;
+        hashChecks++;
+        if(localHashes[slot] != remoteHashes[slot] && desyncFrame < 0) {
+            desyncFrame = localHashFrames[slot];
+            System.err.println("Netplay: desync, the players' states differ at frame " + desyncFrame);
+            disconnected = true; // playing on would only show each player a different game
+        }
+    }
+
+    /**
+     * Takes every remote input that arrived and rolls back if a prediction was wrong
+     */
+    private void receive() {
+        int rollbackTo = frame;
+        long[] message;
+        while((message = incoming.poll()) != null) {
+            int remoteFrame = (int) message[0];
+            int keys = (int) message[1];
+            remoteAdvantage = (int) message[2];
+            int slot = remoteFrame % RING;
+            if(remoteFrame < frame) {
+                // already simulated with a prediction
+                if(remoteInputs[slot] != keys && remoteFrame < rollbackTo) rollbackTo = remoteFrame;
+                remoteLateFrames += frame - remoteFrame;
+            }
+            remoteInputs[slot] = keys;
+            remoteFrames[slot] = remoteFrame;
+            confirmedFrame = remoteFrame; // TCP keeps them in order
+            lastRemote = keys;
+            remoteInputCount++;
+        }
+        if(rollbackTo < frame) rollback(rollbackTo);
+
+        while((message = incomingHashes.poll()) != null) {
+            int slot = (int) (message[0] / HASH_INTERVAL) % HASHES;
+            remoteHashFrames[slot] = (int) message[0];
+            remoteHashes[slot] = message[1];
+            compareHashes(slot);
+        }
+    }
+
+    /**
+     * Restores the snapshot of the first mispredicted frame and simulates back to the present
+     */
+    private void rollback(int from) {
+        long start = System.nanoTime();
+        InputLatency latency = chip.getInputLatency();
+        chip.setMuted(true);
+        chip.setTrace(false);
+        chip.setInputLatency(null); // replayed key reads and draws are not new input reaching the screen
+        chip.loadState(states[from % RING]);
+        for(int f = from; f < frame; f++) {
+            int slot = f % RING;
+            if(remoteFrames[slot] != f) {
+                remoteInputs[slot] = lastRemote; // predict again with what we know now
+            }
+            if(f > from) chip.saveState(states[slot]);
+            simulate(slot);
+        }
+        chip.setMuted(muted);
+        chip.setTrace(trace);
+        chip.setInputLatency(latency);
+
+        int depth = frame - from;
+        rollbacks++;
+        rolledBackFrames += depth;
+        if(depth > maxRollback) maxRollback = depth;
+        resimulationNanos += System.nanoTime() - start;
+    }
+
+    private void simulate(int slot) {
+        int keys = localInputs[slot] | remoteInputs[slot]; // same on both sides
+        for(int i = 0; i < keyBuffer.length; i++) {
+            keyBuffer[i] = (keys >> i) & 1;
+        }
+        for(int i = 0; i < instructionsPerFrame; i++) {
+            chip.setKeyBuffer(keyBuffer);
+            chip.run();
+        }
+    }
+
+    public boolean isDisconnected() {
+        return disconnected;
+    }
+
+    public boolean isDesynced() {
+        return desyncFrame >= 0;
+    }
+
+    public int getPlayer() {
+        return player;
+    }
+
+    public int getFrame() {
+        return frame;
+    }
+
+    public int getInstructionsPerFrame() {
+        return instructionsPerFrame;
+    }
+
+    public long getFrameNanos() {
+        return frameNanos;
+    }
+
+    public void close() {
+        try {
+            socket.close();
+        } catch (IOException e) {
+        }
+    }
+
+    /**
+     * @return
+     * rollback depth, re-simulation cost and perceived latency so far
+     */
+    public String report() {
+        double frameMillis = frameNanos / 1e6;
+        double averageDepth = rollbacks == 0 ? 0 : (double) rolledBackFrames / rollbacks;
+        double resimPerFrame = rolledBackFrames == 0 ? 0 : resimulationNanos / 1e6 / rolledBackFrames;
+        double lateFrames = remoteInputCount == 0 ? 0 : (double) remoteLateFrames / remoteInputCount;
+        return String.format("Netplay (player %d): %d frames, %d stalls%n" +
+                        "  rollbacks: %d, depth avg %.2f max %d frames%n" +
+                        "  re-simulation: %.4f ms per frame (%.0fx real time)%n" +
+                        "  latency: local input 0 ms, remote input arrives %.2f frames (%.1f ms) late, hidden by rollback%n" +
+                        "  time sync: %.2f frames ahead, %d frames stretched%n" +
+                        "  state checks: %d, %s",
+                player, frame, stalls,
+                rollbacks, averageDepth, maxRollback,
+                resimPerFrame, resimPerFrame == 0 ? 0 : frameMillis / resimPerFrame,
+                lateFrames, lateFrames * frameMillis,
+                frameAdvantage, slowedFrames,
+                hashChecks, desyncFrame < 0 ? "in sync" : "DESYNC at frame " + desyncFrame);
+    }
+}
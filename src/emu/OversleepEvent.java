@@ -0,0 +1,70 @@
+package emu;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.SettingDefinition;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+@Name("chip8.Oversleep")
+@Label("Oversleep")
+@Category({"Chip 8", "Front End"})
+@Description("Emulation loop slept longer than it asked for")
+@Enabled(false)
+@StackTrace(false)
+class OversleepEvent extends Event {
+
+    @Label("Requested")
+    @Timespan(Timespan.NANOSECONDS)
+    long requested;
+
+    @Label("Oversleep")
+    @Timespan(Timespan.NANOSECONDS)
+    long oversleep;
+
+    /**
+     * Thread.sleep always wakes up a little late, only oversleeping by at least the tolerance is recorded
+     * the threshold setting cannot do this, it applies to the whole sleep
+     */
+    @SettingDefinition
+    @Label("Tolerance")
+    @Description("Record only when the loop woke up at least this late")
+    protected boolean tolerance(OversleepTolerance setting) {
+        return oversleep >= setting.getNanos();
+    }
+
+    /**
+     * Thread.sleep that records when the loop woke up late
+     * only call once FlightRecorder.isInitialized(), touching this class before starts the recorder
+     * @param millis
+     * requested sleep
+     */
+    static void sleep(int millis) throws InterruptedException {
+        sleepNanos(millis * 1_000_000L);
+    }
+
+    /**
+     * @param nanos
+     * requested sleep
+     */
+    static void sleepNanos(long nanos) throws InterruptedException {
+        OversleepEvent event = new OversleepEvent();
+        if(!event.isEnabled()) {
+            Thread.sleep(nanos / 1_000_000, (int) (nanos % 1_000_000));
+            return;
+        }
+        event.begin();
+        long before = System.nanoTime();
+        Thread.sleep(nanos / 1_000_000, (int) (nanos % 1_000_000));
+        event.end();
+        event.requested = nanos;
+        event.oversleep = System.nanoTime() - before - nanos;
+        if(event.shouldCommit()) {
+            event.commit();
+        }
+    }
+}
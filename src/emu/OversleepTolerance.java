@@ -0,0 +1,63 @@
+package emu;
+
+import jdk.jfr.SettingControl;
+import jdk.jfr.Timespan;
+
+import java.util.Set;
+
+/**
+ * Tolerance setting of chip8.Oversleep, eg "1 ms" or "500 us"
+ * with several recordings the smallest tolerance wins
+ */
+@Timespan
+public class OversleepTolerance extends SettingControl {
+
+    private static final String DEFAULT = "1 ms";
+
+    private volatile String value = DEFAULT;
+    private volatile long nanos = parse(DEFAULT);
+
+    public String combine(Set<String> values) {
+        String smallest = null;
+        for(String candidate : values) {
+            if(smallest == null || parse(candidate) < parse(smallest)) smallest = candidate;
+        }
+        return smallest == null ? DEFAULT : smallest;
+    }
+
+    public void setValue(String value) {
+        this.nanos = parse(value);
+        this.value = value;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    long getNanos() {
+        return nanos;
+    }
+
+    /**
+     * @param text
+     * number and unit, ns, us, ms or s
+     * @return
+     * nanoseconds, the default for anything unreadable
+     */
+    static long parse(String text) {
+        String[] parts = text.trim().split("\\s+");
+        try {
+            long amount = Long.parseLong(parts[0]);
+            String unit = parts.length > 1 ? parts[1] : "ns";
+            switch(unit) {
+                case "ns": return amount;
+                case "us": return amount * 1_000L;
+                case "ms": return amount * 1_000_000L;
+                case "s": return amount * 1_000_000_000L;
+            }
+        } catch (NumberFormatException e) {
+            // fall through to the default
+        }
+        return 1_000_000L;
+    }
+}